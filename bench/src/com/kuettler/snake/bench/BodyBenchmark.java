@@ -0,0 +1,62 @@
+
+package com.kuettler.snake.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.kuettler.snake.core.Body;
+
+/**
+ * Appending a head point and trimming the tail to maxLength, the body
+ * bookkeeping of every tick.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BodyBenchmark
+{
+    @Param({"500", "5000", "50000"})
+    public float maxLength;
+
+    /** Distance between consecutive points */
+    @Param({"0.5", "1.5", "5"})
+    public float segment;
+
+    private Body body;
+    private double angle;
+    private float x, y;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        body = new Body();
+        body.moveTo(x, y);
+        while (body.length() < maxLength)
+            appendAndTrim();
+    }
+
+    @Benchmark
+    public float appendAndTrim() {
+        // a wide spiral, so that points never coincide
+        angle += segment / 400.0;
+        x += segment*(float)Math.cos(angle);
+        y += segment*(float)Math.sin(angle);
+        body.lineTo(x, y);
+        body.trim(maxLength);
+        return body.length();
+    }
+}
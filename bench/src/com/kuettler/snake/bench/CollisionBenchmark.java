@@ -0,0 +1,95 @@
+
+package com.kuettler.snake.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.kuettler.snake.core.Body;
+import com.kuettler.snake.core.Bounds;
+import com.kuettler.snake.core.ChunkTree;
+import com.kuettler.snake.core.Collision;
+import com.kuettler.snake.core.RasterDetector;
+import com.kuettler.snake.core.SegmentGrid;
+import com.kuettler.snake.core.Snake;
+
+/**
+ * A single head-vs-body query against a grown snake, through each of
+ * the collision detectors. The grid and chunk tree queries should
+ * stay flat as the snake gets longer; the raster redraws everything.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CollisionBenchmark
+{
+    @Param({"500", "5000", "50000"})
+    public float maxLength;
+
+    @Param({"1080x1920"})
+    public String surface;
+
+    private Body body;
+    private SegmentGrid grid;
+    private ChunkTree tree;
+    private RasterDetector raster;
+    private float x, y, radius, prefix;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        int[] size = Steering.size(surface);
+        Snake snake = Steering.grown(size[0], size[1], maxLength, 1f/60f);
+
+        Body b = snake.body;
+        body = new Body();
+        body.moveTo(b.x(0), b.y(0));
+        for (int i = 1; i < b.size(); ++i)
+            body.lineTo(b.x(i), b.y(i));
+
+        radius = snake.getWidth() / 2f;
+        grid = new SegmentGrid(0, 0, size[0], size[1],
+                               2*snake.getWidth(), radius);
+        grid.rebuild(body);
+        tree = new ChunkTree();
+        tree.rebuild(body);
+        raster = new RasterDetector(new Bounds(0, 0, size[0], size[1]));
+
+        x = snake.pos.x;
+        y = snake.pos.y;
+        prefix = body.length() - snake.getNeckLength();
+    }
+
+    @Benchmark
+    public boolean grid() {
+        return grid.hits(body, prefix, x, y, radius);
+    }
+
+    @Benchmark
+    public boolean bruteForce() {
+        return Collision.hits(body, prefix, x, y, radius);
+    }
+
+    @Benchmark
+    public boolean bvh() {
+        return tree.hits(body, prefix, x, y, radius);
+    }
+
+    @Benchmark
+    public boolean raster() {
+        return raster.hits(body, prefix, x, y, radius);
+    }
+}
@@ -0,0 +1,88 @@
+
+package com.kuettler.snake.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.kuettler.snake.core.Bounds;
+import com.kuettler.snake.core.Pickups;
+import com.kuettler.snake.core.Snake;
+
+/**
+ * A simulation tick with items lying around: the snake circles
+ * through them, eats what it touches, and every eaten item is put
+ * back somewhere else. The tick should cost the same whether there
+ * are ten items or a hundred thousand.
+ *
+ * Beyond a thousand items the field grows with the number of items,
+ * so that the items within reach of the head stay as many; a hundred
+ * thousand items on one screen would cover it several times over.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PickupBenchmark
+{
+    @Param({"10", "100", "1000", "10000", "100000"})
+    public int items;
+
+    @Param({"1080x1920"})
+    public String surface;
+
+    private Snake snake;
+    private Pickups pickups;
+    private Bounds bounds;
+    private final Random random = new Random(1);
+    private float t, dt = 1f/60f;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        int[] size = Steering.size(surface);
+        float scale = (float)Math.sqrt(Math.max(1.0, items/1000.0));
+        snake = Steering.grown((int)(scale*size[0]), (int)(scale*size[1]),
+                               500f, dt);
+        bounds = snake.getBoundary();
+        pickups = new Pickups(bounds, 6f, snake.getWidth() + 6f);
+        pickups.scatter(bounds, items, 40f, random);
+    }
+
+    /** Steering, integration, collision and eating */
+    @Benchmark
+    public int tick() {
+        Steering.steer(snake, t);
+        snake.integrate(t, dt);
+        t += dt;
+        // no growth, so that only the number of items changes
+        int eaten = pickups.eat(snake, 0f);
+        if (eaten > 0)
+            pickups.scatter(bounds, eaten, 40f, random);
+        return eaten;
+    }
+
+    /** The head-vs-items query alone */
+    @Benchmark
+    public float query() {
+        float x = bounds.left + bounds.width()*random.nextFloat();
+        float y = bounds.top + bounds.height()*random.nextFloat();
+        float eaten = pickups.eat(x, y, snake.getWidth() + 6f);
+        if (eaten != 0f)
+            pickups.scatter(bounds, items - pickups.size(), 40f, random);
+        return eaten;
+    }
+}
@@ -0,0 +1,111 @@
+
+package com.kuettler.snake.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.kuettler.snake.core.Snake;
+import com.kuettler.snake.core.SpringBatch;
+
+/**
+ * One RK4 step of the head spring for many snakes, each snake on its
+ * own versus all of them in a SpringBatch; and the same with the
+ * bodies following, to see how much of a tick the spring is.
+ *
+ * The spring-only benchmarks run undamped, so that the heads keep
+ * swinging instead of settling on their goals, where the velocities
+ * would decay into denormals. State is reset every iteration.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SpringBenchmark
+{
+    @Param({"1", "100", "10000"})
+    public int snakes;
+
+    private Snake[] swinging;
+    private SpringBatch swingingBatch;
+    private Snake[] moving;
+    private SpringBatch movingBatch;
+    private float t;
+    private final float dt = 1f / 60;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        swinging = new Snake[snakes];
+        swingingBatch = new SpringBatch(snakes);
+        moving = new Snake[snakes];
+        movingBatch = new SpringBatch(snakes);
+        for (int i = 0; i < snakes; ++i) {
+            float x = (i % 100)*20f, y = (i / 100)*20f;
+            swinging[i] = new Snake(0xffff0000);
+            swinging[i].setConstants(80f, 0f);
+            swinging[i].setPosition(x, y);
+            swinging[i].goal.set(x + 30f, y - 40f);
+            swingingBatch.add(swinging[i]);
+
+            moving[i] = new Snake(0xffff0000);
+            moving[i].setPosition(x, y);
+            moving[i].setGoal(x + 30f, y - 40f);
+            movingBatch.add(moving[i]);
+        }
+        t = 0f;
+    }
+
+    /** The spring, snake by snake */
+    @Benchmark
+    public float objects() {
+        Snake[] s = swinging;
+        for (int i = 0; i < s.length; ++i)
+            s[i].integrateSpring(t, dt);
+        t += dt;
+        return s[0].pos.x;
+    }
+
+    /** The spring, all snakes in one loop */
+    @Benchmark
+    public float batch() {
+        swingingBatch.integrate(dt);
+        return swingingBatch.x(0);
+    }
+
+    /** Spring and body, snake by snake */
+    @Benchmark
+    public float objectsTick() {
+        Snake[] s = moving;
+        for (int i = 0; i < s.length; ++i)
+            s[i].integrate(t, dt);
+        t += dt;
+        return s[0].pos.x;
+    }
+
+    /** Spring in one loop, then the bodies follow snake by snake */
+    @Benchmark
+    public float batchTick() {
+        Snake[] s = moving;
+        SpringBatch batch = movingBatch;
+        batch.integrate(dt);
+        for (int i = 0; i < s.length; ++i) {
+            batch.store(i, s[i]);
+            s[i].follow();
+            batch.setGoal(i, s[i].goal.x, s[i].goal.y);
+        }
+        return s[0].pos.x;
+    }
+}
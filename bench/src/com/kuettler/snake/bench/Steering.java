@@ -0,0 +1,49 @@
+
+package com.kuettler.snake.bench;
+
+import com.kuettler.snake.core.Bounds;
+import com.kuettler.snake.core.Circling;
+import com.kuettler.snake.core.Snake;
+
+/**
+ * Deterministic steering for benchmarks: keeps a snake circling the
+ * centre of its boundary on a slowly breathing radius, so that long
+ * bodies spread over the surface instead of piling up on one ring.
+ */
+final class Steering
+{
+    private Steering() {}
+
+    public static void steer(Snake snake, float t) {
+        Circling.steer(snake, snake.getBoundary(), t);
+    }
+
+    /**
+     * Creates a snake on a surface of the given size and runs it
+     * until its body has reached maxLength.
+     */
+    public static Snake grown(int width, int height, float maxLength,
+                              float dt) {
+        Snake snake = new Snake(0xffff0000);
+        snake.setMaxLength(maxLength);
+        snake.setBoundary(new Bounds(0, 0, width, height));
+        snake.setPosition(width/2f, 5*height/8f);
+
+        float t = 0f;
+        while (snake.body.length() < maxLength) {
+            steer(snake, t);
+            snake.integrate(t, dt);
+            t += dt;
+        }
+        return snake;
+    }
+
+    /** Parses a surface size given as "WIDTHxHEIGHT" */
+    public static int[] size(String surface) {
+        int x = surface.indexOf('x');
+        return new int[] {
+            Integer.parseInt(surface.substring(0, x)),
+            Integer.parseInt(surface.substring(x + 1))
+        };
+    }
+}
@@ -0,0 +1,83 @@
+
+package com.kuettler.snake.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.kuettler.snake.core.Snake;
+import com.kuettler.snake.core.Snapshot;
+
+/**
+ * Cost of one simulation tick of a fully grown snake: steering,
+ * integration with trimming and self-collision, and the snapshot
+ * handed to the renderer.
+ *
+ * The step rate sets the segment density: at a higher rate the snake
+ * moves less per step, so the same body length has more points.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TickBenchmark
+{
+    @Param({"500", "5000", "50000"})
+    public float maxLength;
+
+    /** Physics steps per second */
+    @Param({"30", "60", "240"})
+    public int stepRate;
+
+    @Param({"480x800", "1080x1920", "2160x3840"})
+    public String surface;
+
+    private Snake snake;
+    private Snapshot snapshot;
+    private float t, dt;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        int[] size = Steering.size(surface);
+        dt = 1f / stepRate;
+        snake = Steering.grown(size[0], size[1], maxLength, dt);
+        snapshot = new Snapshot();
+        snake.snapshot(snapshot);
+    }
+
+    /** Steering, integration, trim and collision */
+    @Benchmark
+    public int tick() {
+        Steering.steer(snake, t);
+        snake.integrate(t, dt);
+        t += dt;
+        return snake.getMode();
+    }
+
+    /** Steering towards a new goal alone */
+    @Benchmark
+    public float steer() {
+        snake.setGoal(snake.pos.x + 30f, snake.pos.y - 40f);
+        return snake.goal.x;
+    }
+
+    /** Copying the body for the renderer */
+    @Benchmark
+    public int snapshot() {
+        snake.snapshot(snapshot);
+        return snapshot.count;
+    }
+}
@@ -0,0 +1,91 @@
+
+package com.kuettler.snake.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.kuettler.snake.core.Bounds;
+import com.kuettler.snake.core.Circling;
+import com.kuettler.snake.core.Snake;
+import com.kuettler.snake.core.Workers;
+import com.kuettler.snake.core.World;
+
+/**
+ * Cost of one world step with many grown snakes, by number of
+ * threads. Comparing the threads parameter shows how well the step
+ * scales with cores.
+ *
+ * Every snake circles its own spot of a square arena, so that bodies
+ * are spread out and meet their neighbours now and then.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WorldBenchmark
+{
+    @Param({"16", "256", "1024"})
+    public int snakes;
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    @Param({"500"})
+    public float maxLength;
+
+    private Workers workers;
+    private World world;
+    private final float dt = 1f / 60;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        int side = (int)Math.ceil(Math.sqrt(snakes));
+        float spot = 200f;
+        workers = new Workers(threads);
+        world = new World(new Bounds(0, 0, side*spot, side*spot), workers);
+
+        for (int i = 0; i < snakes; ++i) {
+            final float cx = (i % side + 0.5f)*spot;
+            final float cy = (i / side + 0.5f)*spot;
+            Snake snake = new Snake(0xffff0000);
+            snake.setMaxLength(maxLength);
+            world.add(snake, new World.Controller() {
+                    public void steer(Snake snake, float t) {
+                        Circling.steer(snake, cx, cy,
+                                       60f + 40f*(float)Math.sin(0.5*t));
+                    }
+                });
+            snake.setPosition(cx, cy + 60f);
+        }
+
+        while (world.get(0).body.length() < maxLength)
+            world.step(dt);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        workers.shutdown();
+    }
+
+    /** Integration, shared grid update and snake-vs-snake collision */
+    @Benchmark
+    public int step() {
+        world.step(dt);
+        return world.crashedInto(0);
+    }
+}
@@ -0,0 +1,272 @@
+
+package com.kuettler.snake.core;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs many independent snakes without rendering, for tuning the
+ * spring constants, goal distance and length.
+ *
+ * Every combination of the swept values is run once per seed. Runs
+ * are numbered and handed out to the worker threads one at a time,
+ * so nothing is kept per queued run and memory does not grow with
+ * the size of the sweep. Results go through a small bounded queue to
+ * a writer thread that streams them as CSV, in the order the runs
+ * finish.
+ */
+public class BatchRunner
+{
+    /** Random steering: a new goal somewhere on the surface */
+    public static final int STEER_RANDOM = 0;
+
+    /** Scripted steering: circles of slowly changing radius */
+    public static final int STEER_CIRCLE = 1;
+
+    public float[] springs = { 80f };
+    public float[] dampings = { 50f };
+    public float[] goalDistances = { 50f };
+    public float[] maxLengths = { 500f };
+    public int seeds = 1;
+
+    public int steering = STEER_RANDOM;
+    /** Seconds between goal changes when steering randomly */
+    public float goalInterval = 1f;
+
+    public float width = 480f;
+    public float height = 800f;
+    public float dt = 1f/60;
+    /** Simulated seconds per run */
+    public float seconds = 60f;
+
+    public static final String HEADER = "run,seed,k,b,goal_dist,max_length,"
+        + "time_to_crash,path_length,collisions,body_length";
+
+    /** The outcome of one run */
+    public static class Result
+    {
+        public int run;
+        public int seed;
+        public float k, b, goalDistance, maxLength;
+        /** Simulated time of the first crash, or -1 */
+        public float timeToCrash = -1f;
+        /** Distance travelled by the head */
+        public float pathLength;
+        /** Number of times the snake went into a crash */
+        public int collisions;
+        public float bodyLength;
+
+        public void write(Writer out) throws IOException {
+            out.write(run + "," + seed + "," + k + "," + b + ","
+                      + goalDistance + "," + maxLength + ","
+                      + timeToCrash + "," + pathLength + ","
+                      + collisions + "," + bodyLength + "\n");
+        }
+    }
+
+    public int runs() {
+        return springs.length * dampings.length * goalDistances.length
+            * maxLengths.length * seeds;
+    }
+
+    /** Runs simulation number i of the sweep */
+    public Result run(int i) {
+        Result r = new Result();
+        r.run = i;
+        r.seed = i % seeds;
+        i /= seeds;
+        r.maxLength = maxLengths[i % maxLengths.length];
+        i /= maxLengths.length;
+        r.goalDistance = goalDistances[i % goalDistances.length];
+        i /= goalDistances.length;
+        r.b = dampings[i % dampings.length];
+        i /= dampings.length;
+        r.k = springs[i];
+
+        Snake snake = new Snake(0xffff0000);
+        snake.setConstants(r.k, r.b);
+        snake.setGoalDistance(r.goalDistance);
+        snake.setMaxLength(r.maxLength);
+        snake.setBoundary(new Bounds(0, 0, width, height));
+        snake.setPosition(width/2f, 5*height/8f);
+
+        Random random = new Random(r.seed);
+        float goalX = width/2f, goalY = 0f, nextGoal = 0f;
+        int steps = (int)(seconds / dt);
+        float t = 0f;
+        boolean crashed = false;
+        for (int n = 0; n < steps; ++n) {
+            if (steering == STEER_RANDOM) {
+                if (t >= nextGoal) {
+                    goalX = random.nextFloat() * width;
+                    goalY = random.nextFloat() * height;
+                    nextGoal += goalInterval;
+                }
+                snake.setGoal(goalX, goalY);
+            } else {
+                Circling.steer(snake, snake.getBoundary(), t);
+            }
+
+            snake.integrate(t, dt);
+            t += dt;
+            r.pathLength += State.length(snake.pos.x - snake.prevPos.x,
+                                         snake.pos.y - snake.prevPos.y);
+
+            boolean crash = snake.getMode() == Snake.MODE_CRASH;
+            if (crash && !crashed) {
+                ++r.collisions;
+                if (r.timeToCrash < 0f)
+                    r.timeToCrash = t;
+            }
+            crashed = crash;
+        }
+        r.bodyLength = snake.body.length();
+        return r;
+    }
+
+    /**
+     * Runs the whole sweep on workers, streaming CSV to out. If out
+     * fails, the runs not yet started are skipped and the error is
+     * thrown once the workers are done.
+     */
+    public void runAll(Workers workers, final Writer out) throws IOException {
+        final BlockingQueue<Result> results =
+            new ArrayBlockingQueue<Result>(4*workers.parallelism());
+        final Result done = new Result();
+        final AtomicReference<Exception> failure =
+            new AtomicReference<Exception>();
+
+        Thread writer = new Thread("BatchWriter") {
+                public void run() {
+                    Result r = null;
+                    try {
+                        out.write(HEADER + "\n");
+                        for (r = take(results); r != done; r = take(results))
+                            r.write(out);
+                        out.flush();
+                    } catch (IOException e) {
+                        failure.set(e);
+                    } catch (RuntimeException e) {
+                        failure.set(e);
+                    } finally {
+                        // the workers block on the full queue until
+                        // it is drained
+                        while (r != done)
+                            r = take(results);
+                    }
+                }
+            };
+        writer.start();
+
+        try {
+            workers.run(new Workers.Task() {
+                    public void run(int from, int to) {
+                        for (int i = from; i < to && failure.get() == null; ++i)
+                            put(results, BatchRunner.this.run(i));
+                    }
+                }, runs(), 1);
+        } finally {
+            put(results, done);
+        }
+
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Exception e = failure.get();
+        if (e instanceof IOException)
+            throw (IOException)e;
+        if (e != null)
+            throw (RuntimeException)e;
+    }
+
+    private static void put(BlockingQueue<Result> queue, Result r) {
+        try {
+            queue.put(r);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted", e);
+        }
+    }
+
+    private static Result take(BlockingQueue<Result> queue) {
+        try {
+            return queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted", e);
+        }
+    }
+
+    private static float[] floats(String list) {
+        String[] parts = list.split(",");
+        float[] values = new float[parts.length];
+        for (int i = 0; i < parts.length; ++i)
+            values[i] = Float.parseFloat(parts[i]);
+        return values;
+    }
+
+    private static void usage() {
+        System.err.println("usage: BatchRunner [-k list] [-b list] [-goal list]"
+                           + " [-length list] [-seeds n] [-steer random|circle]"
+                           + " [-seconds s] [-rate hz] [-size WxH]"
+                           + " [-threads n]");
+        System.exit(2);
+    }
+
+    /** Runs a sweep given on the command line and writes CSV to stdout */
+    public static void main(String[] args) throws IOException {
+        BatchRunner batch = new BatchRunner();
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 0; i < args.length; i += 2) {
+            if (i + 1 == args.length)
+                usage();
+            String name = args[i], value = args[i+1];
+            if (name.equals("-k")) {
+                batch.springs = floats(value);
+            } else if (name.equals("-b")) {
+                batch.dampings = floats(value);
+            } else if (name.equals("-goal")) {
+                batch.goalDistances = floats(value);
+            } else if (name.equals("-length")) {
+                batch.maxLengths = floats(value);
+            } else if (name.equals("-seeds")) {
+                batch.seeds = Integer.parseInt(value);
+            } else if (name.equals("-steer")) {
+                batch.steering = value.equals("circle") ? STEER_CIRCLE
+                    : STEER_RANDOM;
+            } else if (name.equals("-seconds")) {
+                batch.seconds = Float.parseFloat(value);
+            } else if (name.equals("-rate")) {
+                batch.dt = 1f / Float.parseFloat(value);
+            } else if (name.equals("-size")) {
+                int x = value.indexOf('x');
+                batch.width = Float.parseFloat(value.substring(0, x));
+                batch.height = Float.parseFloat(value.substring(x + 1));
+            } else if (name.equals("-threads")) {
+                threads = Integer.parseInt(value);
+            } else {
+                usage();
+            }
+        }
+
+        Workers workers = new Workers(threads);
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out));
+        long start = System.nanoTime();
+        try {
+            batch.runAll(workers, out);
+        } finally {
+            workers.shutdown();
+        }
+        double secs = (System.nanoTime() - start) / 1e9;
+        System.err.println(batch.runs() + " runs in " + secs + " s on "
+                           + threads + " threads");
+    }
+}
@@ -0,0 +1,283 @@
+
+package com.kuettler.snake.core;
+
+/**
+ * The body of a snake as a polyline. Point 0 is the tip of the tail,
+ * the last point is the head.
+ *
+ * Besides its position in the polyline every point has an absolute
+ * index that never changes while the point is part of the body:
+ * point i has the absolute index base() + i. Segment i runs from
+ * point i to point i+1 and is identified by the absolute index of
+ * its first point.
+ *
+ * The points live in a ring buffer addressed by absolute index, so
+ * appending at the head and dropping points at the tail never moves
+ * the other points. Along with each point the buffer stores the arc
+ * length travelled up to it, which makes the length of any stretch
+ * of body a subtraction, and finding the point at a given arc length
+ * a binary search.
+ */
+public class Body
+{
+    /**
+     * Arc lengths are rebased once the tail has travelled this far,
+     * before float precision suffers
+     */
+    private static final float REBASE = 65536f;
+
+    private float[] xs = new float[64];
+    private float[] ys = new float[64];
+
+    /** Arc length travelled up to each point */
+    private float[] arcs = new float[64];
+
+    private int mask = 63;
+    private int count;
+    private int base;
+
+    /** For segment(), which needs a point while it fills out */
+    private final State scratch = new State();
+
+    public void reset() {
+        base += count;
+        count = 0;
+    }
+
+    public void moveTo(float x, float y) {
+        reset();
+        add(x, y, 0f);
+    }
+
+    public void lineTo(float x, float y) {
+        if (count == 0) {
+            add(x, y, 0f);
+            return;
+        }
+        int last = (base + count - 1) & mask;
+        float dx = x - xs[last];
+        float dy = y - ys[last];
+        add(x, y, arcs[last] + (float)Math.sqrt(dx*dx + dy*dy));
+    }
+
+    /**
+     * Moves the head point to (x, y), as if it had been appended
+     * there in the first place.
+     */
+    public void moveLast(float x, float y) {
+        if (count < 2) {
+            xs[base & mask] = x;
+            ys[base & mask] = y;
+            return;
+        }
+        int last = (base + count - 1) & mask;
+        int prev = (base + count - 2) & mask;
+        float dx = x - xs[prev];
+        float dy = y - ys[prev];
+        xs[last] = x;
+        ys[last] = y;
+        arcs[last] = arcs[prev] + (float)Math.sqrt(dx*dx + dy*dy);
+    }
+
+    /**
+     * Cuts the tail so that the body is at most maxLength long. The
+     * new tip of the tail is interpolated on the first kept segment.
+     * Amortized O(1) as long as the body grows by a bounded number
+     * of points between calls.
+     */
+    public void trim(float maxLength) {
+        if (count < 2 || length() <= maxLength)
+            return;
+
+        float cut = arcs[(base + count - 1) & mask] - maxLength;
+        while (arcs[(base + 1) & mask] <= cut) {
+            ++base;
+            --count;
+        }
+
+        int i = base & mask, j = (base + 1) & mask;
+        float f = (cut - arcs[i]) / (arcs[j] - arcs[i]);
+        xs[i] += f * (xs[j] - xs[i]);
+        ys[i] += f * (ys[j] - ys[i]);
+        arcs[i] = cut;
+
+        if (cut > REBASE)
+            rebase();
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /** Absolute index of point 0 */
+    public int base() {
+        return base;
+    }
+
+    public float length() {
+        return count == 0 ? 0f : arc(count - 1);
+    }
+
+    public float x(int i) {
+        return xs[(base + i) & mask];
+    }
+
+    public float y(int i) {
+        return ys[(base + i) & mask];
+    }
+
+    /** Arc length from the tip of the tail to point i */
+    public float arc(int i) {
+        return arcs[(base + i) & mask] - arcs[base & mask];
+    }
+
+    /** Length of the segment from point i to point i+1 */
+    public float segmentLength(int i) {
+        return arcs[(base + i + 1) & mask] - arcs[(base + i) & mask];
+    }
+
+    /**
+     * The segment containing the point at arc length s, clamped to
+     * the first and last segment.
+     */
+    public int segmentAt(float s) {
+        s += arcs[base & mask];
+        int lo = 0, hi = count - 2;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (arcs[(base + mid) & mask] <= s)
+                lo = mid;
+            else
+                hi = mid - 1;
+        }
+        return lo;
+    }
+
+    /**
+     * The same segment as segmentAt(s), searched for from segment i
+     * on. O(1) for callers that keep track of a point moving along
+     * the body, such as the neck.
+     */
+    public int segmentFrom(int i, float s) {
+        int last = count - 2;
+        if (last <= 0)
+            return 0;
+        i = i < 0 ? 0 : (i > last ? last : i);
+        s += arcs[base & mask];
+        while (i < last && arcs[(base + i + 1) & mask] <= s)
+            ++i;
+        while (i > 0 && arcs[(base + i) & mask] > s)
+            --i;
+        return i;
+    }
+
+    /**
+     * Sets out to the point at arc length s from the tip of the tail,
+     * s clamped to the body. O(log n).
+     */
+    public void pointAt(float s, State out) {
+        if (count < 2) {
+            out.set(count == 0 ? 0f : x(0), count == 0 ? 0f : y(0));
+            return;
+        }
+        s = clamp(s);
+        pointOn(segmentAt(s), s, out);
+    }
+
+    /**
+     * Sets out to the direction of the body at arc length s, a unit
+     * vector pointing towards the head; (0, 0) where the body has no
+     * length. O(log n).
+     */
+    public void tangentAt(float s, State out) {
+        if (count < 2) {
+            out.set(0f, 0f);
+            return;
+        }
+        int i = segmentAt(clamp(s));
+        float dx = x(i+1) - x(i), dy = y(i+1) - y(i);
+        float d = State.length(dx, dy);
+        if (d > 0f)
+            out.set(dx/d, dy/d);
+        else
+            out.set(0f, 0f);
+    }
+
+    /**
+     * Makes out the stretch of this body between arc lengths s0 and
+     * s1, both clamped to the body, with ends interpolated on their
+     * segments. O(log n) plus the points copied; out must be another
+     * body.
+     */
+    public void segment(float s0, float s1, Body out) {
+        out.reset();
+        if (count < 2) {
+            if (count == 1)
+                out.moveTo(x(0), y(0));
+            return;
+        }
+        s0 = clamp(s0);
+        s1 = Math.max(s0, clamp(s1));
+        int i = segmentAt(s0), j = segmentAt(s1);
+        State p = scratch;
+        pointOn(i, s0, p);
+        out.moveTo(p.x, p.y);
+        for (int k = i + 1; k <= j; ++k)
+            out.lineTo(x(k), y(k));
+        // an end on point j has been copied already
+        if (j == i || s1 > arc(j)) {
+            pointOn(j, s1, p);
+            out.lineTo(p.x, p.y);
+        }
+    }
+
+    private float clamp(float s) {
+        float length = length();
+        return s < 0f ? 0f : (s > length ? length : s);
+    }
+
+    /**
+     * Sets out to the point at arc length s on segment i, which has
+     * to contain it. O(1), for callers that keep track of i.
+     */
+    public void pointOn(int i, float s, State out) {
+        float l = segmentLength(i);
+        float f = l > 0f ? (s - arc(i)) / l : 0f;
+        out.set(x(i) + f*(x(i+1) - x(i)), y(i) + f*(y(i+1) - y(i)));
+    }
+
+    private void add(float x, float y, float arc) {
+        if (count == xs.length)
+            grow();
+        int i = (base + count) & mask;
+        xs[i] = x;
+        ys[i] = y;
+        arcs[i] = arc;
+        ++count;
+    }
+
+    /** Doubles the capacity, keeping every point at its absolute index */
+    private void grow() {
+        int capacity = 2*xs.length;
+        int m = capacity - 1;
+        float[] nxs = new float[capacity];
+        float[] nys = new float[capacity];
+        float[] narcs = new float[capacity];
+        for (int k = base; k != base + count; ++k) {
+            nxs[k & m] = xs[k & mask];
+            nys[k & m] = ys[k & mask];
+            narcs[k & m] = arcs[k & mask];
+        }
+        xs = nxs;
+        ys = nys;
+        arcs = narcs;
+        mask = m;
+    }
+
+    /** Makes the tip of the tail arc length 0 again */
+    private void rebase() {
+        float origin = arcs[base & mask];
+        for (int k = base; k != base + count; ++k)
+            arcs[k & mask] -= origin;
+    }
+}
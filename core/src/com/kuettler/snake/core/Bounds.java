@@ -0,0 +1,34 @@
+
+package com.kuettler.snake.core;
+
+/**
+ * An axis-aligned rectangle, the area a snake lives in.
+ */
+public class Bounds
+{
+    public final float left, top, right, bottom;
+
+    public Bounds(float left, float top, float right, float bottom) {
+        this.left = left;
+        this.top = top;
+        this.right = right;
+        this.bottom = bottom;
+    }
+
+    public float width() {
+        return right - left;
+    }
+
+    public float height() {
+        return bottom - top;
+    }
+
+    public boolean contains(float x, float y) {
+        return x >= left && x < right && y >= top && y < bottom;
+    }
+
+    @Override
+    public String toString() {
+        return "Bounds(" + left + ", " + top + ", " + right + ", " + bottom + ")";
+    }
+}
@@ -0,0 +1,27 @@
+
+package com.kuettler.snake.core;
+
+/**
+ * Tests the point against every segment of the body. Needs no index,
+ * which makes it the reference the other detectors are checked
+ * against, and the fastest for short bodies.
+ */
+public class BruteForceDetector extends CollisionDetector
+{
+    public void rebuild(Body body) {
+    }
+
+    public void added(Body body) {
+    }
+
+    public void headMoved(Body body) {
+    }
+
+    public void trimmed(Body body) {
+    }
+
+    public boolean hits(Body body, float prefix,
+                        float px, float py, float radius) {
+        return Collision.hits(body, prefix, px, py, radius);
+    }
+}
@@ -0,0 +1,191 @@
+
+package com.kuettler.snake.core;
+
+/**
+ * A two level bounding volume hierarchy over the body segments.
+ *
+ * Consecutive segments are grouped into chunks of 16 by their
+ * absolute index, and chunks into groups of 16. Every chunk and
+ * group keeps the bounding box of its segments, so a query only
+ * descends into the boxes that come within the radius of the point.
+ * Since neighbouring segments lie next to each other, the boxes stay
+ * small for all but the sharpest turns.
+ *
+ * Appending grows the newest boxes, moving the head point recomputes
+ * them, and trimming the tail leaves the oldest boxes as they are,
+ * which only makes them a little too large. No update costs more
+ * than 32 boxes.
+ */
+public class ChunkTree extends CollisionDetector
+{
+    private static final int SHIFT = 4;
+    private static final int FANOUT = 1 << SHIFT;
+
+    /** Boxes (x0, y0, x1, y1) of chunks and groups, by index in a ring */
+    private float[] chunks = new float[4*64];
+    private float[] groups = new float[4*8];
+
+    /** Ids of the oldest and one past the newest segment */
+    private int first, end;
+
+    /** The first segment added since the last rebuild */
+    private int start;
+
+    public void rebuild(Body body) {
+        first = end = start = body.base();
+        for (int i = 0; i < body.size() - 1; ++i)
+            added(body, i);
+    }
+
+    public void added(Body body) {
+        added(body, body.size() - 2);
+    }
+
+    public void headMoved(Body body) {
+        int id = end - 1;
+        int c = id >> SHIFT;
+        int base = body.base();
+
+        int s = Math.max(first, c << SHIFT);
+        set(chunks, c, body, s - base);
+        for (++s; s <= id; ++s)
+            grow(chunks, c, body, s - base);
+
+        int g = c >> SHIFT;
+        int from = Math.max(first >> SHIFT, g << SHIFT);
+        copy(chunks, from, groups, g);
+        for (int k = from + 1; k <= c; ++k)
+            union(chunks, k, groups, g);
+    }
+
+    public void trimmed(Body body) {
+        first = body.base();
+    }
+
+    public boolean hits(Body body, float prefix,
+                        float px, float py, float radius) {
+        return hits(body, prefix, body.segmentAt(prefix), px, py, radius);
+    }
+
+    @Override
+    public boolean hits(Body body, float prefix, int neck,
+                        float px, float py, float radius) {
+        if (body.size() < 2 || prefix <= 0f)
+            return false;
+        int base = body.base();
+        int last = Math.min(end - 1, base + neck);
+        float r2 = radius*radius;
+
+        for (int g = first >> (2*SHIFT); g <= last >> (2*SHIFT); ++g) {
+            if (!near(groups, g, px, py, radius))
+                continue;
+            int c0 = Math.max(first >> SHIFT, g << SHIFT);
+            int c1 = Math.min(last >> SHIFT, (g << SHIFT) + FANOUT - 1);
+            for (int c = c0; c <= c1; ++c) {
+                if (!near(chunks, c, px, py, radius))
+                    continue;
+                int s0 = Math.max(first, c << SHIFT);
+                int s1 = Math.min(last, (c << SHIFT) + FANOUT - 1);
+                for (int s = s0; s <= s1; ++s) {
+                    if (Collision.segmentHits(body, s - base, prefix,
+                                              px, py, r2))
+                        return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Enters segment i, which must be the next id */
+    private void added(Body body, int i) {
+        int id = body.base() + i;
+        if (first == end)
+            first = end = start = id;
+        ensureCapacity(id);
+
+        int c = id >> SHIFT;
+        if ((id & (FANOUT - 1)) == 0 || id == start)
+            set(chunks, c, body, i);
+        else
+            grow(chunks, c, body, i);
+
+        int g = c >> SHIFT;
+        if ((id & (FANOUT*FANOUT - 1)) == 0 || id == start)
+            copy(chunks, c, groups, g);
+        else
+            union(chunks, c, groups, g);
+        end = id + 1;
+    }
+
+    /** Makes room for the boxes of segment id */
+    private void ensureCapacity(int id) {
+        int c0 = first >> SHIFT, c1 = id >> SHIFT;
+        if (4*(c1 - c0 + 1) > chunks.length)
+            chunks = regrow(chunks, c0, c1);
+        int g0 = c0 >> SHIFT, g1 = c1 >> SHIFT;
+        if (4*(g1 - g0 + 1) > groups.length)
+            groups = regrow(groups, g0, g1);
+    }
+
+    /** A ring at least twice as large, holding boxes from to upto */
+    private static float[] regrow(float[] boxes, int from, int upto) {
+        int length = boxes.length;
+        while (length < 4*(upto - from + 1))
+            length *= 2;
+        float[] grown = new float[2*length];
+        for (int k = from; k <= upto; ++k)
+            System.arraycopy(boxes, slot(k, boxes.length),
+                             grown, slot(k, grown.length), 4);
+        return grown;
+    }
+
+    private static int slot(int k, int length) {
+        return (4*k) & (length - 1);
+    }
+
+    /** Sets box k to the bounds of segment i */
+    private static void set(float[] boxes, int k, Body body, int i) {
+        int s = slot(k, boxes.length);
+        boxes[s] = Math.min(body.x(i), body.x(i+1));
+        boxes[s+1] = Math.min(body.y(i), body.y(i+1));
+        boxes[s+2] = Math.max(body.x(i), body.x(i+1));
+        boxes[s+3] = Math.max(body.y(i), body.y(i+1));
+    }
+
+    /** Grows box k to hold segment i */
+    private static void grow(float[] boxes, int k, Body body, int i) {
+        int s = slot(k, boxes.length);
+        float x = body.x(i+1), y = body.y(i+1);
+        if (x < boxes[s]) boxes[s] = x;
+        if (y < boxes[s+1]) boxes[s+1] = y;
+        if (x > boxes[s+2]) boxes[s+2] = x;
+        if (y > boxes[s+3]) boxes[s+3] = y;
+        x = body.x(i);
+        y = body.y(i);
+        if (x < boxes[s]) boxes[s] = x;
+        if (y < boxes[s+1]) boxes[s+1] = y;
+        if (x > boxes[s+2]) boxes[s+2] = x;
+        if (y > boxes[s+3]) boxes[s+3] = y;
+    }
+
+    private static void copy(float[] from, int k, float[] to, int j) {
+        System.arraycopy(from, slot(k, from.length), to, slot(j, to.length), 4);
+    }
+
+    /** Grows box j of to to hold box k of from */
+    private static void union(float[] from, int k, float[] to, int j) {
+        int s = slot(k, from.length), t = slot(j, to.length);
+        if (from[s] < to[t]) to[t] = from[s];
+        if (from[s+1] < to[t+1]) to[t+1] = from[s+1];
+        if (from[s+2] > to[t+2]) to[t+2] = from[s+2];
+        if (from[s+3] > to[t+3]) to[t+3] = from[s+3];
+    }
+
+    /** Whether box k comes within r of (px, py), roughly */
+    private static boolean near(float[] boxes, int k,
+                                float px, float py, float r) {
+        int s = slot(k, boxes.length);
+        return px >= boxes[s] - r && px <= boxes[s+2] + r
+            && py >= boxes[s+1] - r && py <= boxes[s+3] + r;
+    }
+}
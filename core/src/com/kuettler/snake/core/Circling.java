@@ -0,0 +1,35 @@
+
+package com.kuettler.snake.core;
+
+/**
+ * Scripted steering for runs without a player: keeps the goal a
+ * little ahead of the head on a circle, so that the snake goes round
+ * it. Used by the batch runner, the benchmarks and the tests, which
+ * all need repeatable trajectories that keep a body in motion.
+ */
+public final class Circling
+{
+    /** Angle by which the goal leads the head on the circle */
+    private static final double LEAD = 0.6;
+
+    private Circling() {}
+
+    /** Steers snake round the circle of radius r about (cx, cy) */
+    public static void steer(Snake snake, float cx, float cy, float r) {
+        double a = Math.atan2(snake.pos.y - cy, snake.pos.x - cx) + LEAD;
+        snake.setGoal(cx + r*(float)Math.cos(a), cy + r*(float)Math.sin(a));
+    }
+
+    /**
+     * Steers snake round the centre of bounds on a radius that slowly
+     * breathes with time t, so that long bodies spread over the
+     * surface instead of piling up on one ring
+     */
+    public static void steer(Snake snake, Bounds bounds, float t) {
+        float breathe = 0.5f + 0.5f*(float)Math.sin(0.05*t);
+        float r = 0.45f*Math.min(bounds.width(), bounds.height())
+            *(0.3f + 0.7f*breathe);
+        steer(snake, (bounds.left + bounds.right)/2f,
+              (bounds.top + bounds.bottom)/2f, r);
+    }
+}
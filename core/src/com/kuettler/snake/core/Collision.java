@@ -0,0 +1,94 @@
+
+package com.kuettler.snake.core;
+
+/**
+ * Geometric collision tests against a snake body. Each body segment
+ * is a capsule: the set of points within some radius of the segment,
+ * which is exactly the area covered by a round-capped stroke.
+ */
+public final class Collision
+{
+    private Collision() {}
+
+    /** Squared distance from (px, py) to the segment from a to b */
+    public static float distanceSquared(float px, float py,
+                                        float ax, float ay,
+                                        float bx, float by) {
+        float dx = bx - ax;
+        float dy = by - ay;
+        float wx = px - ax;
+        float wy = py - ay;
+
+        float len2 = dx*dx + dy*dy;
+        if (len2 > 0f) {
+            float t = (wx*dx + wy*dy) / len2;
+            if (t >= 1f) {
+                wx = px - bx;
+                wy = py - by;
+            } else if (t > 0f) {
+                wx -= t*dx;
+                wy -= t*dy;
+            }
+        }
+        return wx*wx + wy*wy;
+    }
+
+    /**
+     * Whether (px, py) lies within radius of the first prefix units of
+     * the body, measured from the tip of the tail. With radius set to
+     * half the stroke width this is the same test as stroking that
+     * part of the body into a bitmap and sampling the pixel at
+     * (px, py).
+     */
+    public static boolean hits(Body body, float prefix,
+                               float px, float py, float radius) {
+        float r2 = radius*radius;
+        int n = body.size();
+
+        for (int i = 0; i < n - 1 && body.arc(i) < prefix; ++i) {
+            if (segmentHits(body, i, prefix, px, py, r2))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Whether the head of snake is too close to the collision
+     * distance for a detector that is only exact up to tolerance to
+     * be wrong about it: a hit with the radius grown by tolerance,
+     * but none with it shrunk. Such a detector also leaves out up to
+     * twice the tolerance more of the body behind the neck, so the
+     * shrunk test does the same.
+     */
+    public static boolean nearMiss(Snake snake, float tolerance) {
+        float r = snake.getWidth()/2f;
+        float prefix = snake.collisionPrefix();
+        float d = tolerance + 0.01f;
+        float x = snake.pos.x, y = snake.pos.y;
+        return hits(snake.body, prefix, x, y, r + d)
+            && !hits(snake.body, prefix - 2f*d, x, y, r - d);
+    }
+
+    /**
+     * Whether (px, py) lies within sqrt(r2) of the part of segment i
+     * that belongs to the first prefix units of the body.
+     */
+    public static boolean segmentHits(Body body, int i, float prefix,
+                               float px, float py, float r2) {
+        float a0 = body.arc(i);
+        if (a0 >= prefix)
+            return false;
+
+        float ax = body.x(i), ay = body.y(i);
+        float bx = body.x(i+1), by = body.y(i+1);
+        float a1 = body.arc(i+1);
+
+        if (a1 > prefix) {
+            // only part of this segment belongs to the prefix
+            float f = (prefix - a0) / (a1 - a0);
+            bx = ax + f*(bx - ax);
+            by = ay + f*(by - ay);
+        }
+        return distanceSquared(px, py, ax, ay, bx, by) <= r2;
+    }
+}
@@ -0,0 +1,116 @@
+
+package com.kuettler.snake.core;
+
+/**
+ * Answers whether a point lies on the older part of a snake body.
+ *
+ * A detector may keep an index over the body. The snake tells it
+ * about every change, in the order they happen: a segment appended at
+ * the head, the head point moved (see {@link Body#moveLast}), the
+ * tail trimmed, or the whole body replaced. Queries see the body as
+ * it is after those changes.
+ *
+ * The backends trade memory for speed differently, so which one is
+ * fastest depends on the device; {@link CollisionHarness} compares
+ * them on the same runs.
+ */
+public abstract class CollisionDetector
+{
+    /** Tests every segment; no index */
+    public static final int BRUTE_FORCE = 0;
+
+    /** A uniform grid of segment lists, see {@link SegmentGrid} */
+    public static final int GRID = 1;
+
+    /** Strokes the body into a byte raster and samples it */
+    public static final int RASTER = 2;
+
+    /** Bounding boxes over chunks of consecutive segments */
+    public static final int BVH = 3;
+
+    /** A coarse raster, stamped and erased segment by segment */
+    public static final int OCCUPANCY = 4;
+
+    public static final int KINDS = 5;
+
+    private static final String[] NAMES = {
+        "brute", "grid", "raster", "bvh", "occupancy"
+    };
+
+    public static String name(int kind) {
+        return NAMES[kind];
+    }
+
+    /** The kind called name, or -1 */
+    public static int kind(String name) {
+        for (int i = 0; i < NAMES.length; ++i)
+            if (NAMES[i].equals(name))
+                return i;
+        return -1;
+    }
+
+    /**
+     * Creates a detector of the given kind for a body of the given
+     * stroke width moving within bounds.
+     */
+    public static CollisionDetector create(int kind, Bounds b, float width) {
+        switch (kind) {
+        case BRUTE_FORCE:
+            return new BruteForceDetector();
+        case GRID:
+            // cells of twice the stroke width; each segment is
+            // entered with a margin of the stroke radius
+            return new SegmentGrid(b.left, b.top, b.right, b.bottom,
+                                   2*width, width/2f);
+        case RASTER:
+            return new RasterDetector(b);
+        case BVH:
+            return new ChunkTree();
+        case OCCUPANCY:
+            return new OccupancyRaster(b, width/2f, width/2f);
+        default:
+            throw new IllegalArgumentException("No collision detector " + kind);
+        }
+    }
+
+    /**
+     * How far from the collision distance the head may be when
+     * results differ from the exact test; 0 for exact detectors.
+     * Detectors with a tolerance leave twice as much of the end of
+     * the prefix out, as a neck for a collision distance longer by
+     * the tolerance would be longer by up to pi/2 times that.
+     */
+    public float tolerance() {
+        return 0f;
+    }
+
+    /** Forgets everything and enters the whole body */
+    public abstract void rebuild(Body body);
+
+    /** A segment was appended at the head of the body */
+    public abstract void added(Body body);
+
+    /** The head point of the body moved */
+    public abstract void headMoved(Body body);
+
+    /** The tail of the body was trimmed */
+    public abstract void trimmed(Body body);
+
+    /**
+     * Same as {@link Collision#hits}: whether (px, py) lies within
+     * radius of the first prefix units of the body, up to the
+     * tolerance.
+     */
+    public abstract boolean hits(Body body, float prefix,
+                                 float px, float py, float radius);
+
+    /**
+     * Same as hits, for callers that know the segment neck the prefix
+     * ends on (see {@link Body#segmentAt}), which saves detectors that
+     * need it a search.
+     */
+    public boolean hits(Body body, float prefix, int neck,
+                        float px, float py, float radius) {
+        return hits(body, prefix, px, py, radius);
+    }
+}
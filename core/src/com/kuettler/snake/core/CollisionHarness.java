@@ -0,0 +1,177 @@
+
+package com.kuettler.snake.core;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.BitSet;
+import java.util.Random;
+
+/**
+ * Runs every collision detector over the same trajectories, checks
+ * that they agree with brute force, and reports the latency of their
+ * queries. The trajectories are recordings made with
+ * {@link Recorder}, or seeded random runs if none are given.
+ *
+ * The raster detectors only agree up to their cell size, so their
+ * disagreements are counted separately from real mismatches: a step
+ * where the head was within the detector's tolerance of the
+ * collision distance is a near miss, not an error. The harness exits
+ * with status 1 if there is any real mismatch; DetectorAgreementTest
+ * checks the same on recorded runs.
+ */
+public class CollisionHarness
+{
+    /** Steps simulated for a generated trajectory */
+    private static final int STEPS = 60*60;
+
+    private CollisionHarness() {}
+
+    /** Something that drives a snake through one trajectory */
+    private interface Trajectory {
+        String name();
+        void run(Snake snake, Replayer.Listener listener) throws IOException;
+    }
+
+    /** The outcome of one detector on one trajectory */
+    private static class Run
+    {
+        final BitSet hits = new BitSet();
+        final FrameStats stats = new FrameStats();
+        long steps;
+        float tolerance;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Trajectory[] trajectories;
+        if (args.length > 0) {
+            trajectories = new Trajectory[args.length];
+            for (int i = 0; i < args.length; ++i)
+                trajectories[i] = recording(args[i]);
+        } else {
+            trajectories = new Trajectory[3];
+            for (int i = 0; i < trajectories.length; ++i)
+                trajectories[i] = random(i);
+        }
+
+        System.out.println("trajectory  detector  steps  crashes  mismatches"
+                           + "  near  p50 ns  p99 ns  max ns");
+        boolean failed = false;
+        for (Trajectory t : trajectories) {
+            Run[] runs = new Run[CollisionDetector.KINDS];
+            for (int kind = 0; kind < runs.length; ++kind)
+                runs[kind] = run(t, kind);
+
+            Run reference = runs[CollisionDetector.BRUTE_FORCE];
+            for (int kind = 0; kind < runs.length; ++kind) {
+                Run r = runs[kind];
+                BitSet diff = (BitSet)r.hits.clone();
+                diff.xor(reference.hits);
+                int near = nearMisses(t, diff, r.tolerance);
+                int mismatches = diff.cardinality() - near;
+                if (mismatches > 0)
+                    failed = true;
+                Histogram h = r.stats.get(FrameStats.COLLISION);
+                System.out.println(t.name() + "  "
+                                   + CollisionDetector.name(kind) + "  "
+                                   + r.steps + "  "
+                                   + r.hits.cardinality() + "  "
+                                   + mismatches + "  "
+                                   + near + "  "
+                                   + h.percentile(0.5) + "  "
+                                   + h.percentile(0.99) + "  "
+                                   + h.max());
+            }
+        }
+        if (failed)
+            System.exit(1);
+    }
+
+    /** Runs t with one kind of detector, recording hits and latency */
+    private static Run run(Trajectory t, int kind) throws IOException {
+        final Run r = new Run();
+        Snake snake = new Snake(0xffff0000);
+        snake.setCollision(kind);
+        snake.setStats(r.stats);
+        t.run(snake, new Replayer.Listener() {
+                public void onStep(Snake snake, long step) {
+                    if (step == 1)
+                        r.tolerance = snake.getDetector().tolerance();
+                    if (snake.getMode() == Snake.MODE_CRASH)
+                        r.hits.set((int)step);
+                    r.steps = step;
+                }
+            });
+        return r;
+    }
+
+    /**
+     * How many of the steps in diff were near misses for a detector
+     * with tolerance, by running t once more
+     */
+    private static int nearMisses(Trajectory t, final BitSet diff,
+                                  final float tolerance)
+        throws IOException {
+        if (diff.isEmpty())
+            return 0;
+        final int[] near = new int[1];
+        Snake snake = new Snake(0xffff0000);
+        snake.setCollision(CollisionDetector.BRUTE_FORCE);
+        t.run(snake, new Replayer.Listener() {
+                public void onStep(Snake s, long step) {
+                    if (!diff.get((int)step))
+                        return;
+                    if (Collision.nearMiss(s, tolerance))
+                        ++near[0];
+                }
+            });
+        return near[0];
+    }
+
+    private static Trajectory recording(final String file) {
+        return new Trajectory() {
+            public String name() {
+                return file;
+            }
+
+            public void run(Snake snake, Replayer.Listener listener)
+                throws IOException {
+                InputStream in = new BufferedInputStream(new FileInputStream(file));
+                try {
+                    Replayer.replay(in, snake, listener, true);
+                } finally {
+                    in.close();
+                }
+            }
+        };
+    }
+
+    /** A minute of steering to random goals on a phone-sized surface */
+    private static Trajectory random(final int seed) {
+        return new Trajectory() {
+            public String name() {
+                return "random" + seed;
+            }
+
+            public void run(Snake snake, Replayer.Listener listener) {
+                float w = 1080f, h = 1920f, dt = 1f/60;
+                Random random = new Random(seed);
+                snake.setMaxLength(3000f);
+                snake.setBoundary(new Bounds(0, 0, w, h));
+                snake.setPosition(w/2f, 5*h/8f);
+                float t = 0f, goalX = 0f, goalY = 0f;
+                for (int step = 1; step <= STEPS; ++step) {
+                    if (step % 60 == 1) {
+                        goalX = random.nextFloat() * w;
+                        goalY = random.nextFloat() * h;
+                    }
+                    snake.setGoal(goalX, goalY);
+                    snake.integrate(t, dt);
+                    t += dt;
+                    listener.onStep(snake, step);
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,57 @@
+
+package com.kuettler.snake.core;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * How much of one thread's time went into running, per game state.
+ * The thread reports the CPU and wall clock time of each stretch it
+ * ran or waited through, under the state it was in when the stretch
+ * began. Readable from any thread.
+ */
+public class CpuUsage
+{
+    private final AtomicLongArray cpu;
+    private final AtomicLongArray wall;
+
+    private long lastCpu, lastWall;
+    private int lastState = -1;
+
+    public CpuUsage(int states) {
+        cpu = new AtomicLongArray(states);
+        wall = new AtomicLongArray(states);
+    }
+
+    /**
+     * Closes the stretch since the last call at the given thread CPU
+     * time and wall time, and starts one in state. Called by the
+     * measured thread only.
+     */
+    public void mark(int state, long cpuNanos, long wallNanos) {
+        if (lastState >= 0) {
+            cpu.addAndGet(lastState, cpuNanos - lastCpu);
+            wall.addAndGet(lastState, wallNanos - lastWall);
+        }
+        lastState = state;
+        lastCpu = cpuNanos;
+        lastWall = wallNanos;
+    }
+
+    /** Share of the wall time in state spent on the CPU, 0 to 1 */
+    public float utilization(int state) {
+        long w = wall.get(state);
+        return w > 0 ? (float)cpu.get(state) / w : 0f;
+    }
+
+    /** Wall time spent in state */
+    public long wallNanos(int state) {
+        return wall.get(state);
+    }
+
+    public void reset() {
+        for (int i = 0; i < cpu.length(); ++i) {
+            cpu.set(i, 0);
+            wall.set(i, 0);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+
+package com.kuettler.snake.core;
+
+/**
+ * Paces the render thread.
+ *
+ * Frames go out every divisor-th vsync of the display, with the
+ * divisor chosen so that the rate stays at or below the target: on a
+ * 60 Hz display a target of 30 draws every second vsync. The next
+ * frame starts just early enough to be drawn by its vsync, judged by
+ * how long drawing took recently, instead of drawing right away and
+ * then blocking in the post.
+ *
+ * When drawing eats most of a frame the divisor goes up, which halves
+ * the rate on a 60 Hz display; once frames would fit into the faster
+ * rate again with room to spare for a while, it comes back down.
+ *
+ * The vsyncs are not observed but estimated from the refresh rate
+ * the display reports, as Choreographer needs API level 16: frames
+ * drift against the real vsync, and the post absorbs the difference.
+ *
+ * Used by the render thread only, except for the target rate.
+ */
+public class FrameScheduler
+{
+    /** Slowing down when a frame's work exceeds this share of it */
+    private static final float BUSY = 0.85f;
+    /** Speeding up when the work would fill this share of a faster frame */
+    private static final float CALM = 0.6f;
+    /** Frames in a row that must be calm before speeding up */
+    private static final int CALM_FRAMES = 60;
+    /** Never slower than this, in Hz */
+    private static final float MIN_RATE = 15f;
+    /** Starting a frame this much before it is needed, on top of the work */
+    private static final long SLACK = 1000000L;
+
+    private final long vsync;
+    private final float refreshRate;
+
+    private volatile int targetRate;
+    /** The target rate the divisors were worked out for */
+    private int appliedRate = -1;
+    private int minDivisor, maxDivisor;
+    private int divisor;
+
+    /** Smoothed time a frame takes to draw */
+    private float work;
+    private int calm;
+    private long lastPost;
+
+    public FrameScheduler(float refreshRate, int targetRate) {
+        this.refreshRate = refreshRate > 0f ? refreshRate : 60f;
+        vsync = (long)(1e9 / this.refreshRate);
+        setTargetRate(targetRate);
+        updateDivisors();
+    }
+
+    /** Aims for at most hz frames per second; any thread */
+    public void setTargetRate(int hz) {
+        targetRate = hz;
+    }
+
+    public int getTargetRate() {
+        return targetRate;
+    }
+
+    /** The rate frames currently go out at, in Hz */
+    public float getRate() {
+        return refreshRate / divisor;
+    }
+
+    /** Time between two frames at the current rate */
+    public long interval() {
+        return vsync * divisor;
+    }
+
+    /** How long to wait at now before starting the next frame */
+    public long delay(long now) {
+        updateDivisors();
+        if (lastPost == 0)
+            return 0;
+        long start = lastPost + interval() - (long)work - SLACK;
+        return start > now ? start - now : 0;
+    }
+
+    /**
+     * Tells that a frame was posted at now after workNanos of
+     * drawing; returns whether the rate changed.
+     */
+    public boolean posted(long now, long workNanos) {
+        updateDivisors();
+        lastPost = now;
+        work = work == 0f ? workNanos : work + 0.1f*(workNanos - work);
+
+        int before = divisor;
+        if (work > BUSY*interval() && divisor < maxDivisor) {
+            ++divisor;
+            calm = 0;
+        } else if (divisor > minDivisor
+                   && work < CALM*vsync*(divisor - 1)) {
+            if (++calm >= CALM_FRAMES) {
+                --divisor;
+                calm = 0;
+            }
+        } else {
+            calm = 0;
+        }
+        return divisor != before;
+    }
+
+    /** Tells that no frame is due until further notice */
+    public void idle() {
+        lastPost = 0;
+    }
+
+    /** Starts over at the target rate when it was changed */
+    private void updateDivisors() {
+        int hz = Math.max(1, targetRate);
+        if (hz == appliedRate)
+            return;
+        appliedRate = hz;
+        minDivisor = Math.max(1, Math.round(refreshRate / hz));
+        while (refreshRate / minDivisor > hz + 0.5f)
+            ++minDivisor;
+        maxDivisor = Math.max(minDivisor, (int)(refreshRate / MIN_RATE));
+        divisor = minDivisor;
+        calm = 0;
+    }
+}
@@ -0,0 +1,119 @@
+
+package com.kuettler.snake.core;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Where the time of a frame goes: one {@link Histogram} of
+ * nanoseconds per phase of the game loop, plus the interval between
+ * posted frames and a count of the frames that were dropped because
+ * an interval ran over the target frame time.
+ *
+ * Phases are recorded by the threads that run them and may be read
+ * from any thread at any time.
+ */
+public class FrameStats
+{
+    /** Waiting for the surface in lockCanvas */
+    public static final int LOCK = 0;
+    /** One round of physics, including collision */
+    public static final int PHYSICS = 1;
+    /** Self-collision test of one physics step */
+    public static final int COLLISION = 2;
+    /** Drawing a frame */
+    public static final int DRAW = 3;
+    /** unlockCanvasAndPost */
+    public static final int POST = 4;
+    /** Interval between two posted frames */
+    public static final int FRAME = 5;
+
+    public static final int PHASES = 6;
+
+    private static final String[] NAMES = {
+        "lock", "physics", "collision", "draw", "post", "frame"
+    };
+
+    private final Histogram[] phases = new Histogram[PHASES];
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile long frameNanos = 1000000000L / 60;
+
+    public FrameStats() {
+        for (int i = 0; i < PHASES; ++i)
+            phases[i] = new Histogram();
+    }
+
+    public static String name(int phase) {
+        return NAMES[phase];
+    }
+
+    public void record(int phase, long nanos) {
+        phases[phase].record(nanos);
+    }
+
+    public Histogram get(int phase) {
+        return phases[phase];
+    }
+
+    /** The frame time frames are expected to keep */
+    public void setFrameNanos(long nanos) {
+        frameNanos = nanos;
+    }
+
+    /**
+     * Records the interval since the previous posted frame. Every
+     * whole frame time beyond the first counts as one dropped frame;
+     * a bit of jitter is tolerated.
+     */
+    public void frame(long interval) {
+        phases[FRAME].record(interval);
+        long target = frameNanos;
+        if (interval > target + target/2)
+            dropped.addAndGet((interval + target/2) / target - 1);
+    }
+
+    public long dropped() {
+        return dropped.get();
+    }
+
+    public void reset() {
+        for (int i = 0; i < PHASES; ++i)
+            phases[i].reset();
+        dropped.set(0);
+    }
+
+    /** One line per phase with count, p50, p99 and max in us */
+    public String summary() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < PHASES; ++i)
+            sb.append(NAMES[i]).append(' ').append(phases[i]).append('\n');
+        sb.append("dropped ").append(dropped()).append('\n');
+        return sb.toString();
+    }
+
+    /**
+     * Writes the stats for offline analysis: a summary line per
+     * phase, then every non-empty bucket as "bucket phase upper count"
+     * with upper the largest value in the bucket, in ns.
+     */
+    public void dump(Writer out) throws IOException {
+        out.write("# phase count p50 p99 max (ns)\n");
+        for (int i = 0; i < PHASES; ++i) {
+            Histogram h = phases[i];
+            out.write(NAMES[i] + " " + h.count() + " " + h.percentile(0.5)
+                      + " " + h.percentile(0.99) + " " + h.max() + "\n");
+        }
+        out.write("dropped " + dropped() + "\n");
+        for (int i = 0; i < PHASES; ++i) {
+            Histogram h = phases[i];
+            for (int b = 0; b < h.buckets(); ++b) {
+                long n = h.bucketCount(b);
+                if (n != 0)
+                    out.write("bucket " + NAMES[i] + " "
+                              + Histogram.highest(b) + " " + n + "\n");
+            }
+        }
+        out.flush();
+    }
+}
@@ -0,0 +1,71 @@
+
+package com.kuettler.snake.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands the newest goal from the UI thread to the simulation.
+ *
+ * A single slot holding both coordinates in one atomic long: every
+ * offer replaces what the simulation has not picked up yet, so a
+ * touch panel reporting hundreds of moves per second costs the
+ * simulation one goal per round, and never the stale ones. Neither
+ * side waits or allocates.
+ */
+public class GoalMailbox
+{
+    /** A NaN that touch coordinates never are */
+    private static final long EMPTY = 0x7fc0000100000000L;
+
+    private final AtomicLong slot = new AtomicLong(EMPTY);
+
+    /* Written by the offering thread only */
+    private volatile long offered;
+    private volatile long coalesced;
+
+    /** Makes (x, y) the goal, replacing any not yet taken */
+    public void offer(float x, float y) {
+        offer(x, y, 0);
+    }
+
+    /**
+     * Makes (x, y) the goal, replacing any not yet taken. skipped
+     * counts samples that were folded into this one before it was
+     * offered, such as the historical samples of a MotionEvent.
+     */
+    public void offer(float x, float y, int skipped) {
+        if (Float.isNaN(x) || Float.isNaN(y))
+            return;
+        long packed = ((long)Float.floatToIntBits(x) << 32)
+            | (Float.floatToIntBits(y) & 0xffffffffL);
+        long dropped = skipped;
+        if (slot.getAndSet(packed) != EMPTY)
+            ++dropped;
+        offered += skipped + 1;
+        coalesced += dropped;
+    }
+
+    /**
+     * Hands the newest goal to handler as an {@link InputQueue#GOAL}
+     * event, if there is one; returns whether there was.
+     */
+    public boolean take(InputQueue.Handler handler) {
+        long packed = slot.getAndSet(EMPTY);
+        if (packed == EMPTY)
+            return false;
+        handler.onInput(InputQueue.GOAL,
+                        Float.intBitsToFloat((int)(packed >>> 32)),
+                        Float.intBitsToFloat((int)packed));
+        return true;
+    }
+
+    /** Number of goal samples seen; only for statistics */
+    public long offered() {
+        return offered;
+    }
+
+    /** Number of those dropped for a newer one; only for statistics */
+    public long coalesced() {
+        return coalesced;
+    }
+}
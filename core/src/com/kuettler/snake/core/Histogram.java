@@ -0,0 +1,111 @@
+
+package com.kuettler.snake.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of durations in nanoseconds with logarithmic buckets,
+ * in the style of HdrHistogram: values below 32 are counted exactly,
+ * above that every power of two is split into 16 buckets, which
+ * keeps the relative error below 1/16.
+ *
+ * Recording neither allocates nor locks, and any thread may read the
+ * histogram while others record into it. A read that races with
+ * recording or reset may be off by the values recorded meanwhile.
+ */
+public class Histogram
+{
+    private static final int SUB_BITS = 4;
+    private static final int SUB = 1 << SUB_BITS;
+    private static final int LINEAR = 2*SUB;
+
+    /** Enough buckets for any positive long */
+    private static final int BUCKETS = LINEAR + (63 - 5 + 1)*SUB;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long value) {
+        if (value < 0)
+            value = 0;
+        counts.incrementAndGet(index(value));
+        total.incrementAndGet();
+        long m = max.get();
+        while (value > m && !max.compareAndSet(m, value))
+            m = max.get();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; ++i)
+            counts.set(i, 0);
+        total.set(0);
+        max.set(0);
+    }
+
+    public long count() {
+        return total.get();
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    /** Number of buckets, for dumping the raw counts */
+    public int buckets() {
+        return BUCKETS;
+    }
+
+    /** Number of values recorded into bucket i */
+    public long bucketCount(int i) {
+        return counts.get(i);
+    }
+
+    /**
+     * The value below which the fraction q of all recorded values
+     * lie, as the upper end of its bucket; 0 if nothing was recorded.
+     */
+    public long percentile(double q) {
+        long n = total.get();
+        if (n == 0)
+            return 0;
+        long rank = (long)Math.ceil(q * n);
+        if (rank < 1)
+            rank = 1;
+        long seen = 0;
+        long m = max.get();
+        for (int i = 0; i < BUCKETS; ++i) {
+            seen += counts.get(i);
+            if (seen >= rank)
+                return Math.min(highest(i), m);
+        }
+        return m;
+    }
+
+    static int index(long value) {
+        if (value < LINEAR)
+            return (int)value;
+        int e = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int)(value >>> (e - SUB_BITS)) & (SUB - 1);
+        return LINEAR + (e - 5)*SUB + sub;
+    }
+
+    /** The largest value that falls into bucket i */
+    public static long highest(int i) {
+        if (i < LINEAR)
+            return i;
+        int e = (i - LINEAR)/SUB + 5;
+        long sub = (i - LINEAR) % SUB;
+        long lowest = (SUB + sub) << (e - SUB_BITS);
+        return lowest + (1L << (e - SUB_BITS)) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return "n=" + count()
+            + " p50=" + percentile(0.5)/1000 + "us"
+            + " p99=" + percentile(0.99)/1000 + "us"
+            + " max=" + max()/1000 + "us";
+    }
+}
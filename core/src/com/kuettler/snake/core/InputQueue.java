@@ -0,0 +1,65 @@
+
+package com.kuettler.snake.core;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A bounded lock-free queue of input events from one producer thread
+ * (the UI thread) to one consumer thread (the simulation). Events
+ * that do not fit are dropped.
+ */
+public class InputQueue
+{
+    /** Move the goal of the snake towards (x, y) */
+    public static final int GOAL = 1;
+    /** The surface is now x by y pixels */
+    public static final int RESIZE = 2;
+
+    public interface Handler {
+        void onInput(int type, float x, float y);
+    }
+
+    private final int[] types;
+    private final float[] xs;
+    private final float[] ys;
+    private final int mask;
+
+    /** Next slot to read, only advanced by the consumer */
+    private final AtomicInteger head = new AtomicInteger();
+    /** Next slot to write, only advanced by the producer */
+    private final AtomicInteger tail = new AtomicInteger();
+
+    /** Creates a queue for 2^bits events */
+    public InputQueue(int bits) {
+        int capacity = 1 << bits;
+        types = new int[capacity];
+        xs = new float[capacity];
+        ys = new float[capacity];
+        mask = capacity - 1;
+    }
+
+    /** Adds an event; returns false if the queue is full */
+    public boolean offer(int type, float x, float y) {
+        int t = tail.get();
+        if (t - head.get() > mask)
+            return false;
+        int i = t & mask;
+        types[i] = type;
+        xs[i] = x;
+        ys[i] = y;
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    /** Hands all queued events to handler, oldest first */
+    public int drain(Handler handler) {
+        int h = head.get();
+        int t = tail.get();
+        for (int j = h; j != t; ++j) {
+            int i = j & mask;
+            handler.onInput(types[i], xs[i], ys[i]);
+        }
+        head.lazySet(t);
+        return t - h;
+    }
+}
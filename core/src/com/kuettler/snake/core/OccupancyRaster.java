@@ -0,0 +1,177 @@
+
+package com.kuettler.snake.core;
+
+import java.util.Arrays;
+
+/**
+ * A raster detector that is kept up to date instead of redrawn.
+ *
+ * The raster has cells of a few pixels, each counting the segments
+ * that cover its centre. A segment is stamped once it lies entirely
+ * within the part of the body the head can collide with, and erased
+ * when it leaves that part or the body; only the one segment across
+ * the end of that part is tested directly. A step thus costs about
+ * one segment, whatever the surface size and body length.
+ *
+ * With cells of half the stroke width the raster needs a small
+ * fraction of the memory of a bitmap the size of the surface.
+ * Results are as exact as the cells: off by up to half a cell
+ * diagonal.
+ */
+public class OccupancyRaster extends CollisionDetector
+{
+    private final float left, top;
+    private final float cellSize;
+    private final int cols, rows;
+    private final float radius;
+
+    /** Number of stamped segments covering each cell's centre */
+    private final short[] counts;
+
+    /** End points (ax, ay, bx, by) of the stamped segments, by id */
+    private float[] stamped = new float[4*256];
+
+    /** Ids of the oldest and one past the newest stamped segment */
+    private int first, end;
+
+    /**
+     * Creates a raster with cells of cellSize over bounds, for
+     * segments stroked with radius.
+     */
+    public OccupancyRaster(Bounds b, float cellSize, float radius) {
+        this.left = b.left;
+        this.top = b.top;
+        this.cellSize = cellSize;
+        this.radius = radius;
+        cols = Math.max(1, (int)Math.ceil(b.width() / cellSize));
+        rows = Math.max(1, (int)Math.ceil(b.height() / cellSize));
+        counts = new short[cols*rows];
+    }
+
+    @Override
+    public float tolerance() {
+        return 0.71f*cellSize;
+    }
+
+    public void rebuild(Body body) {
+        Arrays.fill(counts, (short)0);
+        first = end = body.base();
+    }
+
+    public void added(Body body) {
+    }
+
+    public void headMoved(Body body) {
+        // a stamped head segment has to be stamped anew
+        int id = body.base() + body.size() - 2;
+        while (end > id && end > first)
+            erase(--end);
+    }
+
+    public void trimmed(Body body) {
+        int base = body.base();
+        while (first < base && first < end)
+            erase(first++);
+        if (first == end) {
+            first = end = Math.max(first, base);
+            return;
+        }
+        // the tip of the tail moves along the oldest segment
+        int s = slot(first);
+        if (stamped[s] != body.x(0) || stamped[s+1] != body.y(0)) {
+            erase(first);
+            stamp(body, 0);
+        }
+    }
+
+    public boolean hits(Body body, float prefix,
+                        float px, float py, float radius) {
+        return hits(body, prefix, body.segmentAt(prefix), px, py, radius);
+    }
+
+    @Override
+    public boolean hits(Body body, float prefix, int neck,
+                        float px, float py, float radius) {
+        // the neck, grown by the tolerance
+        prefix -= 2f*tolerance();
+        int n = body.size();
+        if (n < 2 || prefix <= 0f)
+            return false;
+        int base = body.base();
+        if (first == end)
+            first = end = base;
+
+        // stamp exactly the segments that end within the prefix
+        int k = body.segmentFrom(neck, prefix);
+        int full = body.arc(k+1) <= prefix ? k + 1 : k;
+        while (end > base + full)
+            erase(--end);
+        while (end < base + full) {
+            stamp(body, end - base);
+            ++end;
+        }
+
+        int cx = (int)((px - left) / cellSize);
+        int cy = (int)((py - top) / cellSize);
+        if (px < left || py < top || cx >= cols || cy >= rows)
+            return false;
+        if (counts[cy*cols + cx] != 0)
+            return true;
+
+        // the segment across the end of the prefix, as it would be
+        // stamped
+        if (full == k) {
+            float x = left + (cx + 0.5f)*cellSize;
+            float y = top + (cy + 0.5f)*cellSize;
+            return Collision.segmentHits(body, k, prefix, x, y,
+                                         this.radius*this.radius);
+        }
+        return false;
+    }
+
+    /** Stamps segment i of the body, which gets the next id */
+    private void stamp(Body body, int i) {
+        int id = body.base() + i;
+        if (4*(end - first + 1) > stamped.length) {
+            float[] grown = new float[2*stamped.length];
+            for (int j = first; j < end; ++j)
+                System.arraycopy(stamped, slot(j), grown,
+                                 (4*j) & (grown.length - 1), 4);
+            stamped = grown;
+        }
+        int s = slot(id);
+        stamped[s] = body.x(i);
+        stamped[s+1] = body.y(i);
+        stamped[s+2] = body.x(i+1);
+        stamped[s+3] = body.y(i+1);
+        cover(s, 1);
+    }
+
+    private void erase(int id) {
+        cover(slot(id), -1);
+    }
+
+    /** Adds delta to the cells covered by the stamped segment at s */
+    private void cover(int s, int delta) {
+        float ax = stamped[s], ay = stamped[s+1];
+        float bx = stamped[s+2], by = stamped[s+3];
+        float r = radius;
+        int x0 = Math.max(0, (int)Math.floor((Math.min(ax, bx) - r - left) / cellSize));
+        int x1 = Math.min(cols - 1, (int)((Math.max(ax, bx) + r - left) / cellSize));
+        int y0 = Math.max(0, (int)Math.floor((Math.min(ay, by) - r - top) / cellSize));
+        int y1 = Math.min(rows - 1, (int)((Math.max(ay, by) + r - top) / cellSize));
+        float r2 = r*r;
+        for (int y = y0; y <= y1; ++y) {
+            float cy = top + (y + 0.5f)*cellSize;
+            for (int x = x0; x <= x1; ++x) {
+                float cx = left + (x + 0.5f)*cellSize;
+                if (Collision.distanceSquared(cx, cy, ax, ay, bx, by) <= r2)
+                    counts[y*cols + x] += delta;
+            }
+        }
+    }
+
+    private int slot(int id) {
+        return (4*id) & (stamped.length - 1);
+    }
+}
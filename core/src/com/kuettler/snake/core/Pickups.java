@@ -0,0 +1,242 @@
+
+package com.kuettler.snake.core;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Items lying around in the boundary for snakes to eat.
+ *
+ * The items live in a pool of parallel arrays and are identified by
+ * their slot in it. Eaten items go back onto a free list and their
+ * slots are handed out again, so adding and eating items does not
+ * allocate once the pool has grown to the largest number of items
+ * alive at a time.
+ *
+ * A uniform grid over the boundary links the items of every cell into
+ * a list, so that a head only has to look at the few cells it can
+ * reach, however many items there are. Cells are at least as large as
+ * that reach; items outside the boundary go into the border cells.
+ *
+ * Not thread-safe; the thread that owns the snakes owns the items.
+ */
+public class Pickups
+{
+    private final float left, top;
+    private final float cellSize;
+    private final int cols, rows;
+
+    /** Radius of an item */
+    private final float radius;
+
+    /** First item in every cell, -1 if none */
+    private final int[] cellFirst;
+
+    /*
+     * The pool. next and prev link the items of a cell; a free slot
+     * has cell -1 and is linked into the free list through next.
+     */
+    private float[] xs = new float[64];
+    private float[] ys = new float[64];
+    private float[] values = new float[64];
+    private int[] cells = new int[64];
+    private int[] next = new int[64];
+    private int[] prev = new int[64];
+    private int used;
+    private int free = -1;
+
+    private int count;
+
+    /**
+     * Changes with every item added or eaten. Versions are handed out
+     * by all sets of items together, so no two sets ever share one.
+     */
+    private int version = versions.incrementAndGet();
+    private static final AtomicInteger versions = new AtomicInteger();
+
+    /**
+     * Creates an empty set of items over bounds. reach is the largest
+     * distance between a head and an item centre that will be asked
+     * about; it sets the size of the cells.
+     */
+    public Pickups(Bounds bounds, float radius, float reach) {
+        this.left = bounds.left;
+        this.top = bounds.top;
+        this.radius = radius;
+        cellSize = Math.max(reach, 1f);
+        cols = Math.max(1, (int)Math.ceil(bounds.width() / cellSize));
+        rows = Math.max(1, (int)Math.ceil(bounds.height() / cellSize));
+        cellFirst = new int[cols*rows];
+        Arrays.fill(cellFirst, -1);
+    }
+
+    /** Radius of an item */
+    public float getRadius() {
+        return radius;
+    }
+
+    /** Number of items alive */
+    public int size() {
+        return count;
+    }
+
+    /** Changes whenever an item is added or eaten */
+    public int version() {
+        return version;
+    }
+
+    /** Adds an item at (x, y) worth value and returns its id */
+    public int add(float x, float y, float value) {
+        int id;
+        if (free >= 0) {
+            id = free;
+            free = next[id];
+        } else {
+            if (used == xs.length)
+                grow();
+            id = used++;
+        }
+        xs[id] = x;
+        ys[id] = y;
+        values[id] = value;
+
+        int cell = cell(x, y);
+        cells[id] = cell;
+        prev[id] = -1;
+        next[id] = cellFirst[cell];
+        if (cellFirst[cell] >= 0)
+            prev[cellFirst[cell]] = id;
+        cellFirst[cell] = id;
+
+        ++count;
+        version = versions.incrementAndGet();
+        return id;
+    }
+
+    /** Adds n items worth value each, spread evenly over bounds */
+    public void scatter(Bounds bounds, int n, float value, Random random) {
+        float m = radius;
+        float w = Math.max(0f, bounds.width() - 2*m);
+        float h = Math.max(0f, bounds.height() - 2*m);
+        for (int i = 0; i < n; ++i)
+            add(bounds.left + m + w*random.nextFloat(),
+                bounds.top + m + h*random.nextFloat(), value);
+    }
+
+    /** Takes item id out and returns its slot to the pool */
+    public void remove(int id) {
+        int cell = cells[id];
+        if (cell < 0)
+            return;
+        if (prev[id] >= 0)
+            next[prev[id]] = next[id];
+        else
+            cellFirst[cell] = next[id];
+        if (next[id] >= 0)
+            prev[next[id]] = prev[id];
+
+        cells[id] = -1;
+        next[id] = free;
+        free = id;
+        --count;
+        version = versions.incrementAndGet();
+    }
+
+    /** Removes all items, keeping the pool */
+    public void clear() {
+        for (int id = 0; id < used; ++id)
+            remove(id);
+    }
+
+    /**
+     * Removes every item whose centre lies within reach of (x, y) and
+     * returns the sum of their values. Only looks at the cells reach
+     * overlaps, at most four as long as reach is not larger than the
+     * reach the items were set up for.
+     */
+    public float eat(float x, float y, float reach) {
+        int x0 = col(x - reach), x1 = col(x + reach);
+        int y0 = row(y - reach), y1 = row(y + reach);
+        float r2 = reach*reach;
+        float eaten = 0f;
+        for (int cy = y0; cy <= y1; ++cy) {
+            for (int cx = x0; cx <= x1; ++cx) {
+                int id = cellFirst[cy*cols + cx];
+                while (id >= 0) {
+                    int following = next[id];
+                    float dx = xs[id] - x, dy = ys[id] - y;
+                    if (dx*dx + dy*dy <= r2) {
+                        eaten += values[id];
+                        remove(id);
+                    }
+                    id = following;
+                }
+            }
+        }
+        return eaten;
+    }
+
+    /**
+     * Lets the head of snake eat the items it touches. Every unit of
+     * value eaten makes the snake grow by growth. Returns the number
+     * of items eaten.
+     */
+    public int eat(Snake snake, float growth) {
+        int before = count;
+        float eaten = eat(snake.pos.x, snake.pos.y,
+                          snake.getWidth() + radius);
+        if (eaten != 0f)
+            snake.setMaxLength(snake.getMaxLength() + growth*eaten);
+        return before - count;
+    }
+
+    /**
+     * Copies the positions of all items into s, unless it holds them
+     * already. Linear in the number of items, unlike everything else
+     * here.
+     */
+    public void snapshot(Snapshot s) {
+        // s may still hold the items from when it was last published
+        if (s.pickupVersion == version)
+            return;
+        s.ensurePickups(count);
+        float[] out = s.pickups;
+        int n = 0;
+        for (int id = 0; id < used; ++id) {
+            if (cells[id] < 0)
+                continue;
+            out[2*n] = xs[id];
+            out[2*n+1] = ys[id];
+            ++n;
+        }
+        s.pickupCount = n;
+        s.pickupRadius = radius;
+        s.pickupVersion = version;
+    }
+
+    private int col(float x) {
+        int c = (int)Math.floor((x - left) / cellSize);
+        return c < 0 ? 0 : (c >= cols ? cols - 1 : c);
+    }
+
+    private int row(float y) {
+        int r = (int)Math.floor((y - top) / cellSize);
+        return r < 0 ? 0 : (r >= rows ? rows - 1 : r);
+    }
+
+    private int cell(float x, float y) {
+        return row(y)*cols + col(x);
+    }
+
+    /** Doubles the pool, keeping every item in its slot */
+    private void grow() {
+        int capacity = 2*xs.length;
+        xs = Arrays.copyOf(xs, capacity);
+        ys = Arrays.copyOf(ys, capacity);
+        values = Arrays.copyOf(values, capacity);
+        cells = Arrays.copyOf(cells, capacity);
+        next = Arrays.copyOf(next, capacity);
+        prev = Arrays.copyOf(prev, capacity);
+    }
+}
@@ -0,0 +1,90 @@
+
+package com.kuettler.snake.core;
+
+import java.util.Arrays;
+
+/**
+ * The way collisions were first detected: stroke the body into a
+ * bitmap the size of the surface on every query and look at the pixel
+ * under the head. Here the bitmap is a byte per pixel and the stroke
+ * a set of capsules, so that it runs off the device too.
+ *
+ * A pixel is covered when its centre lies within the radius of a
+ * segment, so results differ from the exact test by up to about a
+ * pixel. Each query costs time in the surface size and the body
+ * length; kept as a baseline.
+ */
+public class RasterDetector extends CollisionDetector
+{
+    private final float left, top;
+    private final int width, height;
+    private final byte[] pixels;
+
+    public RasterDetector(Bounds b) {
+        left = b.left;
+        top = b.top;
+        width = Math.max(1, (int)Math.ceil(b.width()));
+        height = Math.max(1, (int)Math.ceil(b.height()));
+        pixels = new byte[width*height];
+    }
+
+    @Override
+    public float tolerance() {
+        return 0.71f;
+    }
+
+    public void rebuild(Body body) {
+    }
+
+    public void added(Body body) {
+    }
+
+    public void headMoved(Body body) {
+    }
+
+    public void trimmed(Body body) {
+    }
+
+    public boolean hits(Body body, float prefix,
+                        float px, float py, float radius) {
+        // the neck, grown by the tolerance
+        prefix -= 2f*tolerance();
+        int x = (int)Math.floor(px - left);
+        int y = (int)Math.floor(py - top);
+        if (x < 0 || x >= width || y < 0 || y >= height)
+            return false;
+
+        Arrays.fill(pixels, (byte)0);
+        int n = body.size();
+        for (int i = 0; i < n - 1 && body.arc(i) < prefix; ++i) {
+            float ax = body.x(i), ay = body.y(i);
+            float bx = body.x(i+1), by = body.y(i+1);
+            float a0 = body.arc(i), a1 = body.arc(i+1);
+            if (a1 > prefix) {
+                float f = (prefix - a0) / (a1 - a0);
+                bx = ax + f*(bx - ax);
+                by = ay + f*(by - ay);
+            }
+            stamp(ax, ay, bx, by, radius);
+        }
+        return pixels[y*width + x] != 0;
+    }
+
+    /** Sets all pixels whose centre is within r of the segment */
+    private void stamp(float ax, float ay, float bx, float by, float r) {
+        int x0 = Math.max(0, (int)Math.floor(Math.min(ax, bx) - r - left));
+        int x1 = Math.min(width - 1, (int)Math.ceil(Math.max(ax, bx) + r - left));
+        int y0 = Math.max(0, (int)Math.floor(Math.min(ay, by) - r - top));
+        int y1 = Math.min(height - 1, (int)Math.ceil(Math.max(ay, by) + r - top));
+        float r2 = r*r;
+        for (int y = y0; y <= y1; ++y) {
+            float cy = top + y + 0.5f;
+            int row = y*width;
+            for (int x = x0; x <= x1; ++x) {
+                float cx = left + x + 0.5f;
+                if (Collision.distanceSquared(cx, cy, ax, ay, bx, by) <= r2)
+                    pixels[row + x] = 1;
+            }
+        }
+    }
+}
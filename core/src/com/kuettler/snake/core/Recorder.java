@@ -0,0 +1,129 @@
+
+package com.kuettler.snake.core;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Records a run of a snake as a compact binary log that
+ * {@link Replayer} plays back step for step.
+ *
+ * The log is a header (magic "SNKR", version) followed by records,
+ * each a type byte and its floats:
+ *
+ *   RESET  left top right bottom x y k b maxLength, then SETTINGS
+ *          the snake got this boundary and constants and was put at
+ *          (x, y)
+ *   SETTINGS goalDistance simplifyError turnRadius collision
+ *          everything else that decides where the snake crashes,
+ *          the collision detector kind an int (since version 3)
+ *   GOAL   x y     setGoal(x, y)
+ *   STEPS  dt n    n calls of integrate with this dt (n an int)
+ *   LENGTH maxLength
+ *          setMaxLength, e.g. after eating (since version 2)
+ *   END
+ *
+ * The goals are timestamped by the steps around them, which is all a
+ * replay needs to reproduce the run exactly. Runs of equal steps, the
+ * normal case with a fixed time step, take nine bytes.
+ */
+public class Recorder
+{
+    static final int MAGIC = 0x534e4b52;
+    static final int VERSION = 3;
+
+    static final int END = 0;
+    static final int RESET = 1;
+    static final int GOAL = 2;
+    static final int STEPS = 3;
+    static final int LENGTH = 4;
+    static final int SETTINGS = 5;
+
+    private final DataOutputStream out;
+
+    /** Steps not written yet, all of length runDt */
+    private float runDt;
+    private int runCount;
+
+    public Recorder(OutputStream out) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(out));
+        this.out.writeInt(MAGIC);
+        this.out.writeShort(VERSION);
+    }
+
+    /** Records that snake was just (re)placed with setPosition */
+    public void reset(Snake snake) throws IOException {
+        flushSteps();
+        Bounds b = snake.getBoundary();
+        out.writeByte(RESET);
+        out.writeFloat(b.left);
+        out.writeFloat(b.top);
+        out.writeFloat(b.right);
+        out.writeFloat(b.bottom);
+        out.writeFloat(snake.pos.x);
+        out.writeFloat(snake.pos.y);
+        out.writeFloat(snake.getSpring());
+        out.writeFloat(snake.getDamping());
+        out.writeFloat(snake.getMaxLength());
+        writeSettings(snake);
+    }
+
+    /**
+     * Records that the goal distance, simplify error, turn radius or
+     * collision detector of snake just changed
+     */
+    public void settings(Snake snake) throws IOException {
+        flushSteps();
+        out.writeByte(SETTINGS);
+        writeSettings(snake);
+    }
+
+    private void writeSettings(Snake snake) throws IOException {
+        out.writeFloat(snake.getGoalDistance());
+        out.writeFloat(snake.getSimplifyError());
+        out.writeFloat(snake.getTurnRadius());
+        out.writeInt(snake.getCollision());
+    }
+
+    public void goal(float x, float y) throws IOException {
+        flushSteps();
+        out.writeByte(GOAL);
+        out.writeFloat(x);
+        out.writeFloat(y);
+    }
+
+    /** Records that the maximum length of snake just changed */
+    public void length(Snake snake) throws IOException {
+        flushSteps();
+        out.writeByte(LENGTH);
+        out.writeFloat(snake.getMaxLength());
+    }
+
+    public void step(float dt) throws IOException {
+        if (runCount > 0 && dt != runDt)
+            flushSteps();
+        runDt = dt;
+        ++runCount;
+    }
+
+    /** Ends the log and closes the stream */
+    public void close() throws IOException {
+        try {
+            flushSteps();
+            out.writeByte(END);
+        } finally {
+            out.close();
+        }
+    }
+
+    private void flushSteps() throws IOException {
+        if (runCount == 0)
+            return;
+        out.writeByte(STEPS);
+        out.writeFloat(runDt);
+        out.writeInt(runCount);
+        runCount = 0;
+    }
+}
@@ -0,0 +1,133 @@
+
+package com.kuettler.snake.core;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Plays back a log written by {@link Recorder}, driving a snake
+ * through the same goals and steps as fast as it can integrate them.
+ * The result is a repeatable workload for benchmarks and a fixed
+ * trajectory to compare against.
+ */
+public class Replayer
+{
+    /** Called after every step */
+    public interface Listener {
+        void onStep(Snake snake, long step);
+    }
+
+    private Replayer() {}
+
+    /**
+     * Replays the log in on snake and returns the number of steps.
+     * listener may be null. A truncated log ends the replay quietly.
+     */
+    public static long replay(InputStream in, Snake snake, Listener listener)
+        throws IOException {
+        return replay(in, snake, listener, false);
+    }
+
+    /**
+     * Same as replay, but if ownCollision, snake keeps its collision
+     * detector instead of using the recorded ones, for comparing
+     * detectors on the same run.
+     */
+    public static long replay(InputStream in, Snake snake, Listener listener,
+                              boolean ownCollision)
+        throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != Recorder.MAGIC)
+            throw new IOException("Not a snake recording");
+        int version = data.readShort();
+        if (version < 1 || version > Recorder.VERSION)
+            throw new IOException("Unsupported recording version " + version);
+
+        long steps = 0;
+        float t = 0f;
+        try {
+            for (;;) {
+                int type = data.readByte();
+                switch (type) {
+                case Recorder.END:
+                    return steps;
+                case Recorder.RESET:
+                    Bounds b = new Bounds(data.readFloat(), data.readFloat(),
+                                          data.readFloat(), data.readFloat());
+                    float x = data.readFloat();
+                    float y = data.readFloat();
+                    snake.setConstants(data.readFloat(), data.readFloat());
+                    snake.setMaxLength(data.readFloat());
+                    if (version >= 3)
+                        readSettings(data, snake, ownCollision);
+                    snake.setBoundary(b);
+                    snake.setPosition(x, y);
+                    break;
+                case Recorder.SETTINGS:
+                    readSettings(data, snake, ownCollision);
+                    break;
+                case Recorder.GOAL:
+                    snake.setGoal(data.readFloat(), data.readFloat());
+                    break;
+                case Recorder.LENGTH:
+                    snake.setMaxLength(data.readFloat());
+                    break;
+                case Recorder.STEPS:
+                    float dt = data.readFloat();
+                    for (int n = data.readInt(); n > 0; --n) {
+                        snake.integrate(t, dt);
+                        t += dt;
+                        ++steps;
+                        if (listener != null)
+                            listener.onStep(snake, steps);
+                    }
+                    break;
+                default:
+                    throw new IOException("Bad record type " + type);
+                }
+            }
+        } catch (EOFException e) {
+            return steps;
+        }
+    }
+
+    private static void readSettings(DataInputStream data, Snake snake,
+                                     boolean ownCollision)
+        throws IOException {
+        snake.setGoalDistance(data.readFloat());
+        snake.setSimplifyError(data.readFloat());
+        snake.setTurnRadius(data.readFloat());
+        int collision = data.readInt();
+        if (collision < 0 || collision >= CollisionDetector.KINDS)
+            throw new IOException("Bad collision detector " + collision);
+        if (!ownCollision && collision != snake.getCollision())
+            snake.setCollision(collision);
+    }
+
+    /** Replays each recording given and reports steps per second */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("usage: Replayer recording...");
+            System.exit(2);
+        }
+        for (String name : args) {
+            Snake snake = new Snake(0xffff0000);
+            InputStream in = new BufferedInputStream(new FileInputStream(name));
+            long start = System.nanoTime();
+            long steps;
+            try {
+                steps = replay(in, snake, null);
+            } finally {
+                in.close();
+            }
+            double secs = (System.nanoTime() - start) / 1e9;
+            System.out.println(name + ": " + steps + " steps in " + secs + " s ("
+                               + (long)(steps / secs) + " steps/s), head at "
+                               + snake.pos + ", mode " + snake.getMode());
+        }
+    }
+}
@@ -0,0 +1,200 @@
+
+package com.kuettler.snake.core;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * The complete state of a snake as a compact binary blob, for
+ * surviving rotation and process death and for save slots on disk.
+ *
+ * The layout is a header (magic "SNKS", version) followed by
+ *
+ *   boundary   left top right bottom, or NaN four times for none
+ *   motion     pos, prevPos, vel and goal as x y pairs
+ *   constants  k b goalDistance maxLength turnRadius simplifyError,
+ *              the last two since version 2
+ *   mode       an int
+ *   body       the number of points, then x y for each, tail first
+ *
+ * all floats and ints big-endian. Saving writes the fields straight
+ * into one reused buffer; restoring rebuilds the arc lengths and the
+ * collision grid from the points.
+ */
+public class SaveState
+{
+    static final int MAGIC = 0x534e4b53;
+    static final int VERSION = 2;
+
+    private static final int FIXED_SIZE = 4 + 2 + 4*4 + 8*4 + 6*4 + 4 + 4;
+
+    /** Version 1 lacks the turn radius and simplify error */
+    private static final int FIXED_SIZE_1 = FIXED_SIZE - 2*4;
+
+    private ByteBuffer buffer = ByteBuffer.allocate(4096);
+
+    /**
+     * Writes snake into the reused buffer and returns it, ready to be
+     * read. The buffer is only valid until the next save.
+     */
+    public ByteBuffer save(Snake snake) {
+        Body body = snake.body;
+        int size = FIXED_SIZE + 8*body.size();
+        if (buffer.capacity() < size)
+            buffer = ByteBuffer.allocate(Math.max(size, 2*buffer.capacity()));
+
+        ByteBuffer out = buffer;
+        out.clear();
+        out.putInt(MAGIC);
+        out.putShort((short)VERSION);
+
+        Bounds b = snake.getBoundary();
+        if (b != null) {
+            out.putFloat(b.left).putFloat(b.top);
+            out.putFloat(b.right).putFloat(b.bottom);
+        } else {
+            for (int i = 0; i < 4; ++i)
+                out.putFloat(Float.NaN);
+        }
+
+        out.putFloat(snake.pos.x).putFloat(snake.pos.y);
+        out.putFloat(snake.prevPos.x).putFloat(snake.prevPos.y);
+        out.putFloat(snake.vel.x).putFloat(snake.vel.y);
+        out.putFloat(snake.goal.x).putFloat(snake.goal.y);
+
+        out.putFloat(snake.getSpring()).putFloat(snake.getDamping());
+        out.putFloat(snake.getGoalDistance()).putFloat(snake.getMaxLength());
+        out.putFloat(snake.getTurnRadius()).putFloat(snake.getSimplifyError());
+        out.putInt(snake.getMode());
+
+        int n = body.size();
+        out.putInt(n);
+        for (int i = 0; i < n; ++i)
+            out.putFloat(body.x(i)).putFloat(body.y(i));
+
+        out.flip();
+        return out;
+    }
+
+    /** The state of snake as a new array, e.g. for a Bundle */
+    public byte[] toByteArray(Snake snake) {
+        ByteBuffer state = save(snake);
+        byte[] bytes = new byte[state.remaining()];
+        state.get(bytes);
+        return bytes;
+    }
+
+    /** Saves snake to file, replacing what was there */
+    public void save(Snake snake, File file) throws IOException {
+        ByteBuffer state = save(snake);
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(state.array(), 0, state.limit());
+        } finally {
+            out.close();
+        }
+    }
+
+    /** Writes a state from toByteArray to file, replacing what was there */
+    public static void write(byte[] state, File file) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(state);
+        } finally {
+            out.close();
+        }
+    }
+
+    /** Reads a state saved to file, for restore */
+    public static ByteBuffer read(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            byte[] bytes = new byte[(int)file.length()];
+            int n = 0;
+            while (n < bytes.length) {
+                int read = in.read(bytes, n, bytes.length - n);
+                if (read < 0)
+                    throw new IOException("Save state truncated: " + file);
+                n += read;
+            }
+            return ByteBuffer.wrap(bytes);
+        } finally {
+            in.close();
+        }
+    }
+
+    /** Restores the state saved in file into snake */
+    public static void restore(File file, Snake snake) throws IOException {
+        restore(read(file), snake);
+    }
+
+    /**
+     * Restores the state in in into snake. Leaves snake as it was if
+     * the state cannot be read.
+     */
+    public static void restore(ByteBuffer in, Snake snake) throws IOException {
+        restore(in, snake, null);
+    }
+
+    /**
+     * Restores the state in in into snake but gives it boundary
+     * instead of the saved one, unless boundary is null.
+     */
+    public static void restore(ByteBuffer in, Snake snake, Bounds boundary)
+        throws IOException {
+        try {
+            if (in.getInt() != MAGIC)
+                throw new IOException("Not a snake save state");
+            int version = in.getShort();
+            if (version < 1 || version > VERSION)
+                throw new IOException("Unsupported save state version "
+                                      + version);
+            // everything up to the body points has a fixed size
+            int start = in.position();
+            in.position(start + (version == 1 ? FIXED_SIZE_1 : FIXED_SIZE) - 10);
+            int n = in.getInt();
+            if (n < 0 || in.remaining() < 8*n)
+                throw new IOException("Save state truncated");
+            // a body is at least a tail and a head
+            if (n < 2)
+                throw new IOException("Save state has no body");
+            in.position(start);
+
+            float left = in.getFloat(), top = in.getFloat();
+            float right = in.getFloat(), bottom = in.getFloat();
+            if (boundary == null && !Float.isNaN(left))
+                boundary = new Bounds(left, top, right, bottom);
+
+            snake.pos.set(in.getFloat(), in.getFloat());
+            snake.prevPos.set(in.getFloat(), in.getFloat());
+            snake.vel.set(in.getFloat(), in.getFloat());
+            snake.goal.set(in.getFloat(), in.getFloat());
+
+            snake.setConstants(in.getFloat(), in.getFloat());
+            snake.setGoalDistance(in.getFloat());
+            snake.setMaxLength(in.getFloat());
+            if (version >= 2) {
+                snake.setTurnRadius(in.getFloat());
+                snake.setSimplifyError(in.getFloat());
+            }
+            snake.setMode(in.getInt());
+
+            in.getInt();
+            Body body = snake.body;
+            body.reset();
+            for (int i = 0; i < n; ++i)
+                body.lineTo(in.getFloat(), in.getFloat());
+            // setBoundary indexes the body anyway
+            if (boundary != null)
+                snake.setBoundary(boundary);
+            else
+                snake.bodyChanged();
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Save state truncated");
+        }
+    }
+}
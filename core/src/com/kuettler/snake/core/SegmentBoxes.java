@@ -0,0 +1,139 @@
+
+package com.kuettler.snake.core;
+
+/**
+ * A copy of the points of a polyline by absolute index, with the
+ * bounding box of every chunk of 16 segments, so that the segments
+ * crossing a rectangle can be found without looking at all of them.
+ *
+ * Points are appended at the end and dropped at the base, like the
+ * points of a {@link Body}. As in {@link ChunkTree}, moving a point
+ * or dropping points only ever leaves a box a little too large.
+ */
+public class SegmentBoxes
+{
+    private static final int SHIFT = 4;
+
+    private float[] xs = new float[256];
+    private float[] ys = new float[256];
+    private int mask = 255;
+
+    /** Boxes (x0, y0, x1, y1) of chunks, by chunk index in a ring */
+    private float[] boxes = new float[4*32];
+    private int boxMask = 31;
+
+    /** Absolute indices of the first and one past the last point */
+    private int base, end;
+
+    /** Drops all points; the next one added gets index base */
+    public void reset(int base) {
+        this.base = end = base;
+    }
+
+    public int base() {
+        return base;
+    }
+
+    public int end() {
+        return end;
+    }
+
+    public float x(int k) {
+        return xs[k & mask];
+    }
+
+    public float y(int k) {
+        return ys[k & mask];
+    }
+
+    /**
+     * Sets point k, which is either a current point or end, which
+     * appends it
+     */
+    public void set(int k, float x, float y) {
+        if (k == end && k - base >= xs.length)
+            grow();
+        xs[k & mask] = x;
+        ys[k & mask] = y;
+        int c = k >> SHIFT;
+        if (k == end) {
+            ++end;
+            // the first point of a chunk starts its box
+            if (k == base || (k & ((1 << SHIFT) - 1)) == 0)
+                start(c, x, y);
+            else
+                include(c, x, y);
+        } else {
+            include(c, x, y);
+        }
+        // the point also ends the last segment of the chunk before
+        if (k > base && ((k - 1) >> SHIFT) != c)
+            include(c - 1, x, y);
+    }
+
+    /** Drops the points before k */
+    public void trim(int k) {
+        base = Math.min(k, end);
+    }
+
+    /**
+     * The first segment from k on that may cross the rectangle, or -1.
+     * Segment k joins the points k and k + 1.
+     */
+    public int next(int k, float left, float top, float right, float bottom) {
+        for (k = Math.max(k, base); k < end - 1; ++k) {
+            int c = k >> SHIFT;
+            int b = 4*(c & boxMask);
+            if (boxes[b] > right || boxes[b+2] < left ||
+                boxes[b+1] > bottom || boxes[b+3] < top) {
+                // on to the first segment of the next chunk
+                k = ((c + 1) << SHIFT) - 1;
+                continue;
+            }
+            float x0 = x(k), y0 = y(k), x1 = x(k + 1), y1 = y(k + 1);
+            if (Math.max(x0, x1) >= left && Math.min(x0, x1) <= right &&
+                Math.max(y0, y1) >= top && Math.min(y0, y1) <= bottom)
+                return k;
+        }
+        return -1;
+    }
+
+    private void start(int c, float x, float y) {
+        int b = 4*(c & boxMask);
+        boxes[b] = boxes[b+2] = x;
+        boxes[b+1] = boxes[b+3] = y;
+    }
+
+    private void include(int c, float x, float y) {
+        int b = 4*(c & boxMask);
+        if (x < boxes[b]) boxes[b] = x;
+        if (y < boxes[b+1]) boxes[b+1] = y;
+        if (x > boxes[b+2]) boxes[b+2] = x;
+        if (y > boxes[b+3]) boxes[b+3] = y;
+    }
+
+    /** Doubles the capacity and recomputes the boxes exactly */
+    private void grow() {
+        int capacity = 2*xs.length;
+        int m = capacity - 1;
+        float[] nxs = new float[capacity];
+        float[] nys = new float[capacity];
+        for (int k = base; k < end; ++k) {
+            nxs[k & m] = xs[k & mask];
+            nys[k & m] = ys[k & mask];
+        }
+        xs = nxs;
+        ys = nys;
+        mask = m;
+
+        // twice as many chunks as fit, as the points need not start
+        // at the beginning of one
+        int chunks = 2*(capacity >> SHIFT);
+        boxes = new float[4*chunks];
+        boxMask = chunks - 1;
+        int n = end;
+        end = base;
+        for (int k = base; k < n; ++k)
+            set(k, xs[k & mask], ys[k & mask]);
+    }
+}
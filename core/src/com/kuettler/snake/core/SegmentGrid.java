@@ -0,0 +1,257 @@
+
+package com.kuettler.snake.core;
+
+import java.util.Arrays;
+
+/**
+ * A uniform grid over the body segments of a snake, so that the head
+ * only has to be tested against the segments near it.
+ *
+ * Every segment is entered into all cells its bounding box, grown by
+ * the collision radius, overlaps. A query then only has to look at
+ * the single cell that contains the probe point. Segments are added
+ * at the head and removed at the tail, in the order the body grows
+ * and shrinks, and are identified by their absolute index (see
+ * {@link Body}).
+ *
+ * The entries of all cells come from one pool and are linked into a
+ * list per cell and a list per segment, so removing a segment only
+ * visits its own entries. The pool grows to the most entries ever in
+ * use and is reused from then on; a snake that keeps its length does
+ * not allocate.
+ */
+public class SegmentGrid extends CollisionDetector
+{
+    /** Told when a cell gets its first segment or loses its last */
+    public interface Listener {
+        void cellChanged(int cell, boolean occupied);
+    }
+
+    private final float left, top;
+    private final float cellSize;
+    private final int cols, rows;
+    private final float pad;
+
+    /** First entry of each cell, or -1 */
+    private final int[] cells;
+
+    /**
+     * The entry pool: segment id and cell of each entry, the links
+     * within its cell, and the next entry of the same segment. Free
+     * entries are chained through nextInCell.
+     */
+    private int[] entryIds = new int[1024];
+    private int[] entryCells = new int[1024];
+    private int[] nextInCell = new int[1024];
+    private int[] prevInCell = new int[1024];
+    private int[] nextOfSegment = new int[1024];
+    private int free = -1;
+
+    /** First entry of each segment in the grid, by id */
+    private int[] segments = new int[256];
+
+    /** Ids of the oldest and one past the newest segment */
+    private int first, end;
+
+    private Listener listener;
+
+    /**
+     * Creates a grid over the given area. Segments outside of it are
+     * entered into the border cells. pad is the largest radius that
+     * will be used in queries.
+     */
+    public SegmentGrid(float left, float top, float right, float bottom,
+                       float cellSize, float pad) {
+        this.left = left;
+        this.top = top;
+        this.cellSize = cellSize;
+        this.pad = pad;
+        cols = Math.max(1, (int)Math.ceil((right - left) / cellSize));
+        rows = Math.max(1, (int)Math.ceil((bottom - top) / cellSize));
+        cells = new int[cols*rows];
+        Arrays.fill(cells, -1);
+        release(0, entryIds.length);
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /** Number of cells; cells are numbered row by row */
+    public int cells() {
+        return cols*rows;
+    }
+
+    /** The cell containing (x, y), clamped to the grid */
+    public int cell(float x, float y) {
+        return row(y)*cols + column(x);
+    }
+
+    public void rebuild(Body body) {
+        reset(body.base());
+        for (int i = 0; i < body.size() - 1; ++i)
+            add(body, i);
+    }
+
+    public void added(Body body) {
+        add(body, body.size() - 2);
+    }
+
+    public void headMoved(Body body) {
+        updateLast(body, body.size() - 2);
+    }
+
+    public void trimmed(Body body) {
+        removeBefore(body.base());
+    }
+
+    /** Removes all segments; the next one added gets id start */
+    public void reset(int start) {
+        removeBefore(end);
+        first = end = start;
+    }
+
+    /** Enters segment i of the body, which must be the next id */
+    public void add(Body body, int i) {
+        int id = body.base() + i;
+        if (first == end)
+            first = end = id;
+
+        float x0 = Math.min(body.x(i), body.x(i+1)) - pad;
+        float x1 = Math.max(body.x(i), body.x(i+1)) + pad;
+        float y0 = Math.min(body.y(i), body.y(i+1)) - pad;
+        float y1 = Math.max(body.y(i), body.y(i+1)) + pad;
+        int cx0 = column(x0), cx1 = column(x1);
+        int cy0 = row(y0), cy1 = row(y1);
+
+        if (end - first + 1 > segments.length) {
+            int[] grown = new int[2*segments.length];
+            for (int j = first; j < end; ++j)
+                grown[j & (grown.length - 1)] = segments[j & (segments.length - 1)];
+            segments = grown;
+        }
+        end = id + 1;
+
+        int entries = -1;
+        for (int cy = cy0; cy <= cy1; ++cy)
+            for (int cx = cx0; cx <= cx1; ++cx)
+                entries = insert(cy*cols + cx, id, entries);
+        segments[id & (segments.length - 1)] = entries;
+    }
+
+    /**
+     * Enters segment i of the body again after its head point moved.
+     * It must be the newest segment in the grid.
+     */
+    public void updateLast(Body body, int i) {
+        int id = body.base() + i;
+        if (id != end - 1)
+            throw new IllegalArgumentException("Segment " + id
+                                               + " is not the newest");
+        removeSegment(id);
+        end = id;
+        add(body, i);
+    }
+
+    /** Removes all segments older than id */
+    public void removeBefore(int id) {
+        for (; first < id && first < end; ++first)
+            removeSegment(first);
+    }
+
+    /**
+     * Same as {@link Collision#hits}, but only tests the segments
+     * entered near (px, py). radius must not exceed pad.
+     */
+    public boolean hits(Body body, float prefix,
+                        float px, float py, float radius) {
+        int c = row(py)*cols + column(px);
+        float r2 = radius*radius;
+        int base = body.base();
+        int last = body.size() - 2;
+
+        for (int e = cells[c]; e >= 0; e = nextInCell[e]) {
+            int i = entryIds[e] - base;
+            if (i < 0 || i > last)
+                continue;
+            if (Collision.segmentHits(body, i, prefix, px, py, r2))
+                return true;
+        }
+        return false;
+    }
+
+    private int column(float x) {
+        int c = (int)((x - left) / cellSize);
+        return c < 0 ? 0 : (c >= cols ? cols - 1 : c);
+    }
+
+    private int row(float y) {
+        int r = (int)((y - top) / cellSize);
+        return r < 0 ? 0 : (r >= rows ? rows - 1 : r);
+    }
+
+    /**
+     * Links a new entry for segment id into cell c, in front of the
+     * segment's other entries, and returns it
+     */
+    private int insert(int c, int id, int entries) {
+        if (free < 0)
+            grow();
+        int e = free;
+        free = nextInCell[e];
+
+        int head = cells[c];
+        if (head < 0 && listener != null)
+            listener.cellChanged(c, true);
+        entryIds[e] = id;
+        entryCells[e] = c;
+        prevInCell[e] = -1;
+        nextInCell[e] = head;
+        if (head >= 0)
+            prevInCell[head] = e;
+        cells[c] = e;
+        nextOfSegment[e] = entries;
+        return e;
+    }
+
+    /** Unlinks all entries of segment id and frees them */
+    private void removeSegment(int id) {
+        int e = segments[id & (segments.length - 1)];
+        while (e >= 0) {
+            int c = entryCells[e];
+            int prev = prevInCell[e], next = nextInCell[e];
+            if (prev >= 0)
+                nextInCell[prev] = next;
+            else
+                cells[c] = next;
+            if (next >= 0)
+                prevInCell[next] = prev;
+            if (cells[c] < 0 && listener != null)
+                listener.cellChanged(c, false);
+
+            int along = nextOfSegment[e];
+            nextInCell[e] = free;
+            free = e;
+            e = along;
+        }
+    }
+
+    /** Doubles the entry pool */
+    private void grow() {
+        int n = entryIds.length;
+        entryIds = Arrays.copyOf(entryIds, 2*n);
+        entryCells = Arrays.copyOf(entryCells, 2*n);
+        nextInCell = Arrays.copyOf(nextInCell, 2*n);
+        prevInCell = Arrays.copyOf(prevInCell, 2*n);
+        nextOfSegment = Arrays.copyOf(nextOfSegment, 2*n);
+        release(n, 2*n);
+    }
+
+    /** Puts the entries from up to end on the free list */
+    private void release(int from, int end) {
+        for (int e = end - 1; e >= from; --e) {
+            nextInCell[e] = free;
+            free = e;
+        }
+    }
+}
@@ -0,0 +1,513 @@
+
+package com.kuettler.snake.core;
+
+/**
+ * A snake: a head that follows a goal on a damped spring and drags
+ * its body along. Integrated with RK4; the head crashes when it runs
+ * into the older part of its own body.
+ *
+ * Not thread-safe; one thread owns a snake.
+ */
+public class Snake
+{
+    public static final int MODE_FREE = 1;
+    public static final int MODE_FORCED = 2;
+    public static final int MODE_CRASH = 3;
+
+    private int color;
+    protected float width;
+
+    protected Bounds boundary;
+
+    public final State pos;
+    public final State vel;
+
+    /** Position before the last integration step */
+    public final State prevPos;
+
+    public final Body body;
+
+    /** Kind of the collision detector, set up by setBoundary */
+    private int collision = CollisionDetector.GRID;
+    private CollisionDetector detector;
+    private SegmentGrid.Listener gridListener;
+
+    /**
+     * How far the body may stray from the path of the head when
+     * points are merged; 0 keeps every point
+     */
+    private float simplifyError;
+
+    /** Points merged into the head segment, and the segment's start */
+    private final float[] droppedX = new float[128];
+    private final float[] droppedY = new float[128];
+    private int dropped;
+    private int mergeAnchor = Integer.MIN_VALUE;
+
+    /**
+     * Tightest radius the head is expected to turn on, and the length
+     * of body behind the head that it can never collide with as a
+     * result (see updateNeck)
+     */
+    private float turnRadius;
+    private float neckLength;
+
+    /** Where to record collision timings, if anywhere */
+    private FrameStats stats;
+
+    protected float maxLength;
+    protected float startLength;
+    protected float speed;
+
+    public final State goal;
+    protected float goal_dist = 50f;
+    protected float max_goal_dist = 50f;
+
+    protected int mode;
+
+    /** Spring tightness */
+    protected float k;
+
+    /** Damping coefficient */
+    protected float b;
+
+    /*
+     * RK4 stage derivatives, each holding dx/dt, dy/dt, dvx/dt and
+     * dvy/dt. Preallocated so that integrate() allocates nothing.
+     */
+    private final float[] zero = new float[4];
+    private final float[] da = new float[4];
+    private final float[] db = new float[4];
+    private final float[] dc = new float[4];
+    private final float[] dd = new float[4];
+
+    /** End of the neck, for snapshot() */
+    private final State neck = new State();
+
+    /**
+     * Absolute index of the segment the neck ended on when last
+     * asked, from which neckSegment() looks for it next
+     */
+    private int neckSegment;
+
+    public Snake(int color) {
+        this.color = color;
+        width = 10f;
+        maxLength = 500f;
+        startLength = 50f;
+        speed = 100f;
+
+        pos = new State(0,0);
+        vel = new State(0,0);
+        prevPos = new State(0,0);
+
+        body = new Body();
+
+        goal = new State(0,0);
+
+        mode = MODE_FREE;
+        simplifyError = width/20f;
+        updateNeck();
+
+        setConstants(80f, 50f);
+    }
+
+    public void setPosition(float x, float y) {
+        pos.x = goal.x = prevPos.x = x;
+        pos.y = goal.y = prevPos.y = y;
+        vel.x = vel.y = 0;
+
+        body.moveTo(x, y + startLength);
+        body.lineTo(x, y);
+        indexBody();
+    }
+
+    public void setGoal(State g) {
+        setGoal(g.x, g.y);
+    }
+
+    public void setGoal(float x, float y) {
+        // place the goal goal_dist away from pos towards (x, y)
+        float dx = x - pos.x;
+        float dy = y - pos.y;
+        float d = (float)Math.sqrt(dx*dx + dy*dy);
+        if (d > 0f) {
+            dx *= goal_dist/d;
+            dy *= goal_dist/d;
+        }
+        goal.set(pos.x + dx, pos.y + dy);
+    }
+
+    public void setMode(int m) {
+        mode = m;
+    }
+
+    public int getMode() {
+        return mode;
+    }
+
+    public void setConstants(float k, float b) {
+        this.k = k;
+        this.b = b;
+    }
+
+    /** How far ahead of the head the goal is placed */
+    public float getGoalDistance() {
+        return goal_dist;
+    }
+
+    public void setGoalDistance(float d) {
+        goal_dist = d;
+    }
+
+    /** Spring tightness */
+    public float getSpring() {
+        return k;
+    }
+
+    /** Damping coefficient */
+    public float getDamping() {
+        return b;
+    }
+
+    public int getColor() {
+        return color;
+    }
+
+    public float getWidth() {
+        return width;
+    }
+
+    public float getMaxLength() {
+        return maxLength;
+    }
+
+    public void setMaxLength(float maxLength) {
+        this.maxLength = maxLength;
+    }
+
+    /** How far the simplified body may stray from the head's path */
+    public float getSimplifyError() {
+        return simplifyError;
+    }
+
+    /**
+     * Lets the body merge nearly collinear points as long as it stays
+     * within error of the path the head took. That error is also the
+     * most that collision results may be off by. 0 turns merging off.
+     */
+    public void setSimplifyError(float error) {
+        simplifyError = error;
+        updateNeck();
+    }
+
+    /** Tightest radius the head is expected to turn on */
+    public float getTurnRadius() {
+        return turnRadius;
+    }
+
+    /**
+     * Sets the tightest radius the head is expected to turn on, which
+     * decides how long the neck is. Turns tighter than that may make
+     * the head collide with its neck. 0, the default, lets the head
+     * turn on the spot, as it does when it sets off from rest in any
+     * direction.
+     */
+    public void setTurnRadius(float radius) {
+        turnRadius = radius;
+        updateNeck();
+    }
+
+    /**
+     * Length of body behind the head that the head cannot collide
+     * with. Fixed, however long the body is.
+     */
+    public float getNeckLength() {
+        return neckLength;
+    }
+
+    /** Arc length from the tail to the neck: the part the head can hit */
+    public float collisionPrefix() {
+        return Math.max(0f, body.length() - neckLength);
+    }
+
+    /** Records the time of every collision test into stats, or not if null */
+    public void setStats(FrameStats stats) {
+        this.stats = stats;
+    }
+
+    public Bounds getBoundary() {
+        return boundary;
+    }
+
+    public void setBoundary(Bounds b) {
+        boundary = b;
+        detector = CollisionDetector.create(collision, b, width);
+        if (detector instanceof SegmentGrid)
+            ((SegmentGrid)detector).setListener(gridListener);
+        indexBody();
+    }
+
+    /** One of the kinds in {@link CollisionDetector} */
+    public int getCollision() {
+        return collision;
+    }
+
+    /** Switches to another kind of collision detector */
+    public void setCollision(int kind) {
+        collision = kind;
+        if (boundary != null)
+            setBoundary(boundary);
+    }
+
+    /** The collision detector, set up by setBoundary */
+    public CollisionDetector getDetector() {
+        return detector;
+    }
+
+    /**
+     * The grid over the body segments, set up by setBoundary; null
+     * before that or with another kind of collision detector
+     */
+    public SegmentGrid getGrid() {
+        return detector instanceof SegmentGrid ? (SegmentGrid)detector : null;
+    }
+
+    /**
+     * Lets listener follow which cells of the body grid are
+     * occupied, from the next setBoundary on.
+     */
+    public void setGridListener(SegmentGrid.Listener listener) {
+        gridListener = listener;
+        if (detector instanceof SegmentGrid)
+            ((SegmentGrid)detector).setListener(listener);
+    }
+
+    /** To be called after body was rebuilt from outside */
+    public void bodyChanged() {
+        indexBody();
+    }
+
+    /** Whether (x, y) lies on any part of the body */
+    public boolean touches(float x, float y) {
+        float length = body.length();
+        return detector != null
+            ? detector.hits(body, length, x, y, width/2f)
+            : Collision.hits(body, length, x, y, width/2f);
+    }
+
+    /** Copies what is needed to draw the snake into s */
+    public void snapshot(Snapshot s) {
+        int n = body.size();
+        s.ensureCapacity(n);
+        float[] pts = s.points;
+        for (int i = 0; i < n; ++i) {
+            pts[2*i] = body.x(i);
+            pts[2*i+1] = body.y(i);
+        }
+        s.count = n;
+        s.base = body.base();
+        if (n > 1) {
+            float prefix = collisionPrefix();
+            int i = neckSegment(prefix);
+            body.pointOn(i, prefix, neck);
+            s.neckX = neck.x;
+            s.neckY = neck.y;
+            s.neckIndex = i;
+        } else {
+            s.neckX = pos.x;
+            s.neckY = pos.y;
+            s.neckIndex = 0;
+        }
+        s.prevX = prevPos.x;
+        s.prevY = prevPos.y;
+        s.x = pos.x;
+        s.y = pos.y;
+        s.goalX = goal.x;
+        s.goalY = goal.y;
+        s.width = width;
+        s.color = color;
+        s.mode = mode;
+    }
+
+    /**
+     * Evaluates the spring at the state advanced by dt along the
+     * derivative D and stores the derivative there in result.
+     */
+    protected void evaluate(float t, float dt, float[] D,
+                            float[] result) {
+        float px = pos.x + D[0]*dt;
+        float py = pos.y + D[1]*dt;
+        float vx = vel.x + D[2]*dt;
+        float vy = vel.y + D[3]*dt;
+
+        result[0] = vx;
+        result[1] = vy;
+        result[2] = -k*(px - goal.x) - b*vx;
+        result[3] = -k*(py - goal.y) - b*vy;
+    }
+
+    /** One step of dt: the spring moves the head, the body follows */
+    public void integrate(float t, float dt) {
+        integrateSpring(t, dt);
+        follow();
+    }
+
+    /**
+     * Advances the head position and velocity by one RK4 step of dt
+     * and nothing else; see {@link SpringBatch} for many snakes at
+     * once. follow() has to be called afterwards.
+     */
+    public void integrateSpring(float t, float dt) {
+        // gafferongames.com/game-physics/integration-basics/
+        float[] a = da, b = db, c = dc, d = dd;
+        evaluate(t, 0.0f, zero, a);
+        evaluate(t+dt*0.5f, dt*0.5f, a, b);
+        evaluate(t+dt*0.5f, dt*0.5f, b, c);
+        evaluate(t+dt, dt, c, d);
+
+        prevPos.set(pos.x, pos.y);
+
+        float dxdt  = 1f/6f * (a[0] + 2f*(b[0] + c[0]) + d[0]);
+        float dydt  = 1f/6f * (a[1] + 2f*(b[1] + c[1]) + d[1]);
+        float ddxdt = 1f/6f * (a[2] + 2f*(b[2] + c[2]) + d[2]);
+        float ddydt = 1f/6f * (a[3] + 2f*(b[3] + c[3]) + d[3]);
+
+        pos.x = pos.x + dxdt * dt;
+        pos.y = pos.y + dydt * dt;
+        vel.x = vel.x + ddxdt * dt;
+        vel.y = vel.y + ddydt * dt;
+    }
+
+    /**
+     * Lets the body follow the head to its new position: appends,
+     * trims, tests for a collision and moves the goal on.
+     */
+    public void follow() {
+        append(pos.x, pos.y);
+        body.trim(maxLength);
+        if (detector != null)
+            detector.trimmed(body);
+
+        // the head collides with the body up to its neck, stroked
+        // with round caps
+        long start = stats != null ? System.nanoTime() : 0;
+        float prefix = collisionPrefix();
+        boolean hit = detector != null
+            ? detector.hits(body, prefix, neckSegment(prefix),
+                            pos.x, pos.y, width/2f)
+            : Collision.hits(body, prefix, pos.x, pos.y, width/2f);
+        setMode(hit ? MODE_CRASH : MODE_FORCED);
+        if (stats != null)
+            stats.record(FrameStats.COLLISION, System.nanoTime() - start);
+
+        // keep the goal moving ahead of the snake
+        float v = vel.length();
+        if (v > 0f)
+            setGoal(goal.x + 10f*vel.x/v, goal.y + 10f*vel.y/v);
+        else
+            setGoal(goal.x, goal.y);
+    }
+
+    /**
+     * Adds (x, y) at the head. With simplification on, the head point
+     * moves there instead as long as the points it passed stay close
+     * to the straightened segment, so that the number of points
+     * follows the shape of the body and not the step rate.
+     */
+    private void append(float x, float y) {
+        int n = body.size();
+        if (simplifyError > 0f && n >= 3
+            && mergeAnchor == body.base() + n - 2 && canMerge(x, y)) {
+            droppedX[dropped] = body.x(n-1);
+            droppedY[dropped] = body.y(n-1);
+            ++dropped;
+            body.moveLast(x, y);
+            if (detector != null)
+                detector.headMoved(body);
+            return;
+        }
+
+        body.lineTo(x, y);
+        n = body.size();
+        if (detector != null)
+            detector.added(body);
+        mergeAnchor = body.base() + n - 2;
+        dropped = 0;
+    }
+
+    /**
+     * Whether the head segment can end at (x, y) instead, keeping the
+     * points it replaces within simplifyError. Segments stay shorter
+     * than two widths so that changes to them stay local.
+     */
+    private boolean canMerge(float x, float y) {
+        if (dropped == droppedX.length)
+            return false;
+        int n = body.size();
+        float ax = body.x(n-2), ay = body.y(n-2);
+        if (State.length(x - ax, y - ay) > 2f*width)
+            return false;
+
+        float e2 = simplifyError*simplifyError;
+        if (Collision.distanceSquared(body.x(n-1), body.y(n-1),
+                                      ax, ay, x, y) > e2)
+            return false;
+        for (int j = 0; j < dropped; ++j) {
+            if (Collision.distanceSquared(droppedX[j], droppedY[j],
+                                          ax, ay, x, y) > e2)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Works out the neck length. Turning on a circle of radius r, the
+     * body at arc length s behind the head is 2r sin(s/2r) away from
+     * it, which first exceeds the collision distance c at
+     * s = 2r asin(c/2r). On a straight body that is s = c. Turns
+     * tighter than c/2 overlap the body whatever the neck, so the
+     * longest neck is the half circle of diameter c, which also keeps
+     * the head clear of kinks of up to about 100 degrees.
+     */
+    private void updateNeck() {
+        // the head may be up to simplifyError off the merged body; a
+        // tenth more keeps a head moving straight off the boundary.
+        // Detectors that are off by a tolerance leave out more of the
+        // body themselves, so the neck is the same for all of them.
+        float c = 1.1f*width/2f + simplifyError;
+        float r = Math.max(turnRadius, c/2f);
+        neckLength = 2f*r*(float)Math.asin(Math.min(1f, c/(2f*r)));
+    }
+
+    /**
+     * The segment the prefix ends on. The neck moves along the body
+     * by about as many segments as are appended and trimmed, so
+     * looking for it from where it was last time costs O(1) a step.
+     */
+    private int neckSegment(float prefix) {
+        int base = body.base();
+        int i = body.segmentFrom(neckSegment - base, prefix);
+        neckSegment = base + i;
+        return i;
+    }
+
+    /** Enters all segments of the body into the detector */
+    private void indexBody() {
+        // merging starts over on the new body
+        mergeAnchor = Integer.MIN_VALUE;
+        dropped = 0;
+        neckSegment = body.base() + body.segmentAt(collisionPrefix());
+        if (detector != null)
+            detector.rebuild(body);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getName() + ": Color=" + color;
+    }
+
+    public float distanceToGoal() {
+        return State.length(pos.x - goal.x, pos.y - goal.y);
+    }
+}
@@ -0,0 +1,77 @@
+
+package com.kuettler.snake.core;
+
+/**
+ * What the renderer needs to know about a snake at one point in
+ * time. Written by the simulation thread and handed over to the
+ * render thread through a {@link SnapshotBuffer}.
+ */
+public class Snapshot
+{
+    /** Body points, x and y interleaved, tail first */
+    public float[] points = new float[128];
+    public int count;
+
+    /** Absolute index of the first body point (see {@link Body}) */
+    public int base;
+
+    /**
+     * End of the part of the body the head can collide with, on the
+     * segment from point neckIndex to point neckIndex + 1
+     */
+    public float neckX, neckY;
+    public int neckIndex;
+
+    /** Head position before and after the last physics step */
+    public float prevX, prevY;
+    public float x, y;
+
+    public float goalX, goalY;
+    public float width;
+    public int color;
+    public int mode;
+
+    /**
+     * System.nanoTime() the current head position belongs to, and
+     * the length of the step that led there; used to interpolate the
+     * head between prev and current position
+     */
+    public long time;
+    public long step;
+
+    /** Items to eat (see {@link Pickups}), x and y interleaved */
+    public float[] pickups = new float[64];
+    public int pickupCount;
+    public float pickupRadius;
+
+    /** Changes whenever the items change */
+    public int pickupVersion;
+
+    /** Makes room for n body points */
+    public void ensureCapacity(int n) {
+        if (2*n > points.length) {
+            int size = points.length;
+            while (size < 2*n)
+                size *= 2;
+            points = new float[size];
+        }
+    }
+
+    /** Makes room for n items */
+    public void ensurePickups(int n) {
+        if (2*n > pickups.length) {
+            int size = pickups.length;
+            while (size < 2*n)
+                size *= 2;
+            pickups = new float[size];
+        }
+    }
+
+    /** How far the display at time now lies between prev and current */
+    public float alpha(long now) {
+        if (step <= 0)
+            return 1f;
+        float a = (now - time) / (float)step;
+        return a < 0f ? 0f : (a > 1f ? 1f : a);
+    }
+}
@@ -0,0 +1,45 @@
+
+package com.kuettler.snake.core;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock-free hand-over of snapshots from one writer thread to one
+ * reader thread. Three snapshots rotate between the writer's back
+ * buffer, the published middle buffer and the reader's front buffer,
+ * so neither side ever waits for the other or sees a half-written
+ * snapshot. Publishing and reading are single atomic swaps.
+ */
+public class SnapshotBuffer
+{
+    /** Set in middle when it holds a snapshot the reader has not seen */
+    private static final int FRESH = 4;
+
+    private final Snapshot[] buffers = {
+        new Snapshot(), new Snapshot(), new Snapshot()
+    };
+    private final AtomicInteger middle = new AtomicInteger(1);
+
+    /** Only touched by the writer */
+    private int back = 0;
+
+    /** Only touched by the reader */
+    private int front = 2;
+
+    /** The snapshot the writer may fill in */
+    public Snapshot back() {
+        return buffers[back];
+    }
+
+    /** Makes the back snapshot the latest one */
+    public void publish() {
+        back = middle.getAndSet(back | FRESH) & 3;
+    }
+
+    /** The latest published snapshot, owned by the reader until the next call */
+    public Snapshot latest() {
+        if ((middle.get() & FRESH) != 0)
+            front = middle.getAndSet(front) & 3;
+        return buffers[front];
+    }
+}
@@ -0,0 +1,154 @@
+
+package com.kuettler.snake.core;
+
+import java.util.Arrays;
+
+/**
+ * The spring of {@link Snake#integrateSpring} for many snakes at
+ * once. Positions, velocities, goals and constants of all heads live
+ * in parallel float arrays, and one RK4 step runs as a single loop
+ * over them without branches or calls, which the JIT can unroll and
+ * vectorize. Stepping a head gives the same floats as the snake
+ * would have computed itself, as long as the snake does not override
+ * evaluate.
+ *
+ * Heads are loaded from snakes, stepped, and stored back before the
+ * snakes' bodies follow:
+ *
+ *   batch.integrate(dt);
+ *   for (int i = 0; i < n; ++i) {
+ *       batch.store(i, snakes[i]);
+ *       snakes[i].follow();
+ *       batch.setGoal(i, snakes[i].goal.x, snakes[i].goal.y);
+ *   }
+ *
+ * Not thread-safe.
+ */
+public class SpringBatch
+{
+    private float[] xs, ys;
+    private float[] vxs, vys;
+    private float[] gxs, gys;
+    private float[] ks, bs;
+    private int count;
+
+    public SpringBatch(int capacity) {
+        capacity = Math.max(1, capacity);
+        xs = new float[capacity];
+        ys = new float[capacity];
+        vxs = new float[capacity];
+        vys = new float[capacity];
+        gxs = new float[capacity];
+        gys = new float[capacity];
+        ks = new float[capacity];
+        bs = new float[capacity];
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public void clear() {
+        count = 0;
+    }
+
+    /** Adds a head with the state of snake and returns its index */
+    public int add(Snake snake) {
+        if (count == xs.length)
+            grow();
+        load(count, snake);
+        return count++;
+    }
+
+    /** Sets head i to the state of snake */
+    public void load(int i, Snake snake) {
+        xs[i] = snake.pos.x;
+        ys[i] = snake.pos.y;
+        vxs[i] = snake.vel.x;
+        vys[i] = snake.vel.y;
+        gxs[i] = snake.goal.x;
+        gys[i] = snake.goal.y;
+        ks[i] = snake.getSpring();
+        bs[i] = snake.getDamping();
+    }
+
+    /**
+     * Moves the head of snake to where head i is now, as
+     * integrateSpring would have. The body still has to follow.
+     */
+    public void store(int i, Snake snake) {
+        snake.prevPos.set(snake.pos.x, snake.pos.y);
+        snake.pos.x = xs[i];
+        snake.pos.y = ys[i];
+        snake.vel.x = vxs[i];
+        snake.vel.y = vys[i];
+    }
+
+    public void setGoal(int i, float x, float y) {
+        gxs[i] = x;
+        gys[i] = y;
+    }
+
+    public float x(int i) {
+        return xs[i];
+    }
+
+    public float y(int i) {
+        return ys[i];
+    }
+
+    /** Advances every head by one RK4 step of dt */
+    public void integrate(float dt) {
+        // the four stages of Snake.evaluate, unrolled; the order of
+        // operations is the same, so are the results
+        final float h = dt*0.5f;
+        final float[] xs = this.xs, ys = this.ys;
+        final float[] vxs = this.vxs, vys = this.vys;
+        final float[] gxs = this.gxs, gys = this.gys;
+        final float[] ks = this.ks, bs = this.bs;
+        for (int i = 0; i < count; ++i) {
+            float px = xs[i], py = ys[i];
+            float vx = vxs[i], vy = vys[i];
+            float gx = gxs[i], gy = gys[i];
+            float k = ks[i], b = bs[i];
+
+            float ax = vx, ay = vy;
+            float avx = -k*(px - gx) - b*vx;
+            float avy = -k*(py - gy) - b*vy;
+
+            float bx = vx + avx*h, by = vy + avy*h;
+            float bvx = -k*(px + ax*h - gx) - b*bx;
+            float bvy = -k*(py + ay*h - gy) - b*by;
+
+            float cx = vx + bvx*h, cy = vy + bvy*h;
+            float cvx = -k*(px + bx*h - gx) - b*cx;
+            float cvy = -k*(py + by*h - gy) - b*cy;
+
+            float dx = vx + cvx*dt, dy = vy + cvy*dt;
+            float dvx = -k*(px + cx*dt - gx) - b*dx;
+            float dvy = -k*(py + cy*dt - gy) - b*dy;
+
+            float dxdt  = 1f/6f * (ax + 2f*(bx + cx) + dx);
+            float dydt  = 1f/6f * (ay + 2f*(by + cy) + dy);
+            float ddxdt = 1f/6f * (avx + 2f*(bvx + cvx) + dvx);
+            float ddydt = 1f/6f * (avy + 2f*(bvy + cvy) + dvy);
+
+            xs[i] = px + dxdt*dt;
+            ys[i] = py + dydt*dt;
+            vxs[i] = vx + ddxdt*dt;
+            vys[i] = vy + ddydt*dt;
+        }
+    }
+
+    private void grow() {
+        int capacity = 2*xs.length;
+        xs = Arrays.copyOf(xs, capacity);
+        ys = Arrays.copyOf(ys, capacity);
+        vxs = Arrays.copyOf(vxs, capacity);
+        vys = Arrays.copyOf(vys, capacity);
+        gxs = Arrays.copyOf(gxs, capacity);
+        gys = Arrays.copyOf(gys, capacity);
+        ks = Arrays.copyOf(ks, capacity);
+        bs = Arrays.copyOf(bs, capacity);
+    }
+}
@@ -0,0 +1,32 @@
+
+package com.kuettler.snake.core;
+
+/**
+ * A mutable 2D vector, used for the position, velocity and goal of a
+ * snake.
+ */
+public class State
+{
+    public float x, y;
+
+    public State() {}
+    public State(float x, float y) { this.x = x; this.y = y; }
+
+    public void set(float x, float y) {
+        this.x = x;
+        this.y = y;
+    }
+
+    public float length() {
+        return length(x, y);
+    }
+
+    public static float length(float x, float y) {
+        return (float)Math.sqrt(x*x + y*y);
+    }
+
+    @Override
+    public String toString() {
+        return "State(" + x + ", " + y + ")";
+    }
+}
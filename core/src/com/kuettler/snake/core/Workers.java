@@ -0,0 +1,139 @@
+
+package com.kuettler.snake.core;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A small pool of threads that run one parallel loop at a time.
+ *
+ * The loop range is handed out in chunks from a shared counter, so
+ * threads that finish early take over the remaining work instead of
+ * idling; the calling thread takes part as well. Running a loop does
+ * not allocate, which makes the pool cheap enough to use several
+ * times per frame.
+ *
+ * ForkJoinPool would do the same, but does not exist on older
+ * Android releases.
+ */
+public class Workers
+{
+    /** The body of a parallel loop */
+    public interface Task {
+        void run(int from, int to);
+    }
+
+    private final Thread[] threads;
+
+    private final AtomicInteger next = new AtomicInteger();
+    private final AtomicInteger busy = new AtomicInteger();
+
+    /* The current loop, published by the write to generation */
+    private Task task;
+    private int size;
+    private int grain;
+    private Thread caller;
+
+    private volatile int generation;
+    private volatile boolean shutdown;
+    private volatile Throwable failure;
+
+    /** Creates a pool running loops on parallelism threads in total */
+    public Workers(int parallelism) {
+        threads = new Thread[Math.max(0, parallelism - 1)];
+        for (int i = 0; i < threads.length; ++i) {
+            threads[i] = new Thread(new Runnable() {
+                    public void run() {
+                        loop();
+                    }
+                }, "Worker-" + i);
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+    }
+
+    public int parallelism() {
+        return threads.length + 1;
+    }
+
+    /**
+     * Runs task over [0, n) in chunks of grain and returns when all
+     * of it is done. Not reentrant: only one thread may call run at
+     * a time.
+     */
+    public void run(Task task, int n, int grain) {
+        if (threads.length == 0 || n <= grain) {
+            task.run(0, n);
+            return;
+        }
+
+        this.task = task;
+        this.size = n;
+        this.grain = grain;
+        this.caller = Thread.currentThread();
+        next.set(0);
+        busy.set(threads.length);
+        ++generation;
+        for (Thread t : threads)
+            LockSupport.unpark(t);
+
+        boolean done = false;
+        try {
+            work(task, n, grain);
+            done = true;
+        } finally {
+            if (!done)
+                next.set(n);
+            // the threads must be done with this loop before the next
+            // one starts, even when the caller's share failed
+            while (busy.get() != 0)
+                LockSupport.park(this);
+            this.task = null;
+            // the caller's own failure is the one thrown
+            if (!done)
+                failure = null;
+        }
+
+        Throwable t = failure;
+        if (t != null) {
+            failure = null;
+            throw new RuntimeException("Parallel task failed", t);
+        }
+    }
+
+    /** Stops the threads once they are idle */
+    public void shutdown() {
+        shutdown = true;
+        for (Thread t : threads)
+            LockSupport.unpark(t);
+    }
+
+    private void work(Task task, int n, int grain) {
+        for (;;) {
+            int from = next.getAndAdd(grain);
+            if (from >= n)
+                return;
+            task.run(from, Math.min(n, from + grain));
+        }
+    }
+
+    private void loop() {
+        int seen = 0;
+        for (;;) {
+            while (generation == seen && !shutdown)
+                LockSupport.park(this);
+            if (shutdown)
+                return;
+            seen = generation;
+            try {
+                work(task, size, grain);
+            } catch (Throwable t) {
+                failure = t;
+                // make the others run out of work
+                next.set(size);
+            }
+            if (busy.decrementAndGet() == 0)
+                LockSupport.unpark(caller);
+        }
+    }
+}
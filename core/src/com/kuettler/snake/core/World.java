@@ -0,0 +1,219 @@
+
+package com.kuettler.snake.core;
+
+/**
+ * Many snakes in one arena.
+ *
+ * A step runs in phases. First every snake is steered and integrated,
+ * in parallel on the given {@link Workers}; this includes the self
+ * collision. Then the cells each snake's body entered or left are
+ * merged into a grid shared by all snakes, which lists for every cell
+ * the snakes with body there. Last, again in parallel, every head is
+ * tested against the bodies of the other snakes listed in its cell.
+ *
+ * All snakes share the boundary and width and detect collisions with
+ * a {@link SegmentGrid}, so that their body grids have the same cells.
+ */
+public class World
+{
+    /** Steers a snake before each step; null leaves the goal alone */
+    public interface Controller {
+        void steer(Snake snake, float t);
+    }
+
+    private final Bounds bounds;
+    private final Workers workers;
+
+    private Snake[] snakes = new Snake[16];
+    private Controller[] controllers = new Controller[16];
+    private CellLog[] logs = new CellLog[16];
+    private int[] crashedInto = new int[16];
+    private int count;
+
+    private float width = -1f;
+
+    /** Snakes with body in each cell of the shared grid */
+    private int[][] cellSnakes;
+    private int[] cellCounts;
+
+    private float t, dt;
+
+    private final Workers.Task integrate = new Workers.Task() {
+            public void run(int from, int to) {
+                for (int i = from; i < to; ++i) {
+                    Snake snake = snakes[i];
+                    if (controllers[i] != null)
+                        controllers[i].steer(snake, t);
+                    snake.integrate(t, dt);
+                }
+            }
+        };
+
+    private final Workers.Task collide = new Workers.Task() {
+            public void run(int from, int to) {
+                for (int i = from; i < to; ++i)
+                    crashedInto[i] = findCrash(i);
+            }
+        };
+
+    public World(Bounds bounds, Workers workers) {
+        this.bounds = bounds;
+        this.workers = workers;
+    }
+
+    public Bounds getBounds() {
+        return bounds;
+    }
+
+    /**
+     * Adds a snake, steered by controller or by whoever sets its
+     * goal, and returns its index. The snake gets the world's
+     * boundary and should be placed with setPosition afterwards.
+     */
+    public int add(Snake snake, Controller controller) {
+        if (width < 0f) {
+            width = snake.getWidth();
+        } else if (snake.getWidth() != width) {
+            throw new IllegalArgumentException("All snakes in a world need width "
+                                               + width);
+        }
+        if (count == snakes.length)
+            grow();
+
+        int i = count++;
+        snakes[i] = snake;
+        controllers[i] = controller;
+        crashedInto[i] = -1;
+        logs[i] = new CellLog();
+        snake.setGridListener(logs[i]);
+        snake.setCollision(CollisionDetector.GRID);
+        snake.setBoundary(bounds);
+
+        if (cellSnakes == null) {
+            int cells = snake.getGrid().cells();
+            cellSnakes = new int[cells][];
+            cellCounts = new int[cells];
+        }
+        return i;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public Snake get(int i) {
+        return snakes[i];
+    }
+
+    /** The snake whose body snake i ran into in the last step, or -1 */
+    public int crashedInto(int i) {
+        return crashedInto[i];
+    }
+
+    /** Advances all snakes by dt */
+    public void step(float dt) {
+        this.dt = dt;
+        workers.run(integrate, count, grain());
+        for (int i = 0; i < count; ++i)
+            apply(i);
+        workers.run(collide, count, grain());
+        t += dt;
+    }
+
+    /** Chunks of a few snakes, at least four per thread */
+    private int grain() {
+        return Math.max(1, count / (4*workers.parallelism()));
+    }
+
+    /** Merges the cell changes of snake i into the shared grid */
+    private void apply(int i) {
+        CellLog log = logs[i];
+        for (int k = 0; k < log.size; ++k) {
+            int cell = log.changes[k] >>> 1;
+            if ((log.changes[k] & 1) != 0)
+                addToCell(cell, i);
+            else
+                removeFromCell(cell, i);
+        }
+        log.size = 0;
+    }
+
+    /** The snake whose body the head of snake i touches, or -1 */
+    private int findCrash(int i) {
+        Snake snake = snakes[i];
+        float x = snake.pos.x, y = snake.pos.y;
+        int c = snake.getGrid().cell(x, y);
+        int[] others = cellSnakes[c];
+        int n = cellCounts[c];
+        for (int k = 0; k < n; ++k) {
+            int j = others[k];
+            if (j != i && snakes[j].touches(x, y)) {
+                snake.setMode(Snake.MODE_CRASH);
+                return j;
+            }
+        }
+        return -1;
+    }
+
+    private void addToCell(int c, int snake) {
+        int[] list = cellSnakes[c];
+        int n = cellCounts[c];
+        if (list == null) {
+            list = cellSnakes[c] = new int[4];
+        } else if (n == list.length) {
+            int[] grown = new int[2*n];
+            System.arraycopy(list, 0, grown, 0, n);
+            list = cellSnakes[c] = grown;
+        }
+        list[n] = snake;
+        cellCounts[c] = n + 1;
+    }
+
+    private void removeFromCell(int c, int snake) {
+        int[] list = cellSnakes[c];
+        int n = cellCounts[c];
+        for (int k = 0; k < n; ++k) {
+            if (list[k] == snake) {
+                list[k] = list[n-1];
+                cellCounts[c] = n - 1;
+                return;
+            }
+        }
+    }
+
+    private void grow() {
+        int n = 2*snakes.length;
+        Snake[] s = new Snake[n];
+        Controller[] c = new Controller[n];
+        CellLog[] l = new CellLog[n];
+        int[] x = new int[n];
+        System.arraycopy(snakes, 0, s, 0, count);
+        System.arraycopy(controllers, 0, c, 0, count);
+        System.arraycopy(logs, 0, l, 0, count);
+        System.arraycopy(crashedInto, 0, x, 0, count);
+        snakes = s;
+        controllers = c;
+        logs = l;
+        crashedInto = x;
+    }
+
+    /**
+     * The cells one snake's body entered (low bit set) or left since
+     * the last merge. Only written by the thread integrating that
+     * snake.
+     */
+    private static class CellLog implements SegmentGrid.Listener
+    {
+        int[] changes = new int[16];
+        int size;
+
+        public void cellChanged(int cell, boolean occupied) {
+            if (size == changes.length) {
+                int[] grown = new int[2*size];
+                System.arraycopy(changes, 0, grown, 0, size);
+                changes = grown;
+            }
+            changes[size++] = (cell << 1) | (occupied ? 1 : 0);
+        }
+    }
+}
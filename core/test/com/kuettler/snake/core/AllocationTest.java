@@ -0,0 +1,50 @@
+
+package com.kuettler.snake.core;
+
+import static org.junit.Assert.assertEquals;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.Test;
+
+/**
+ * A simulation tick must not allocate once the snake has grown to
+ * its full length, whichever collision detector it uses; garbage
+ * made sixty times a second ends in collector pauses on a phone.
+ */
+public class AllocationTest
+{
+    private static final int WARMUP = 20000, TICKS = 20000;
+
+    @Test
+    public void ticksDoNotAllocate() {
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+
+        for (int kind = 0; kind < CollisionDetector.KINDS; ++kind) {
+            Snake snake = new Snake(0xffff0000);
+            snake.setCollision(kind);
+            snake.setMaxLength(1500f);
+            snake.setBoundary(new Bounds(0, 0, Trajectories.WIDTH,
+                                         Trajectories.HEIGHT));
+            snake.setPosition(Trajectories.WIDTH/2f, Trajectories.HEIGHT/2f);
+
+            float t = run(snake, 0f, WARMUP);
+            long before = threads.getThreadAllocatedBytes(thread);
+            run(snake, t, TICKS);
+            long allocated = threads.getThreadAllocatedBytes(thread) - before;
+            assertEquals(CollisionDetector.name(kind), 0L, allocated);
+        }
+    }
+
+    /** Circles the centre, so that the body sweeps over most of the surface */
+    private static float run(Snake snake, float t, int ticks) {
+        for (int i = 0; i < ticks; ++i) {
+            Circling.steer(snake, snake.getBoundary(), t);
+            snake.integrate(t, Trajectories.DT);
+            t += Trajectories.DT;
+        }
+        return t;
+    }
+}
@@ -0,0 +1,67 @@
+
+package com.kuettler.snake.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+
+import org.junit.Test;
+
+/**
+ * The sweep streams every run to its writer, and a writer that fails
+ * ends the sweep with its error instead of leaving it stuck.
+ */
+public class BatchRunnerTest
+{
+    /** Many short runs, more than fit into the result queue */
+    private static BatchRunner sweep() {
+        BatchRunner batch = new BatchRunner();
+        batch.seeds = 64;
+        batch.seconds = 0.1f;
+        return batch;
+    }
+
+    @Test(timeout = 20000)
+    public void writesOneLinePerRun() throws IOException {
+        Workers workers = new Workers(2);
+        StringWriter out = new StringWriter();
+        try {
+            sweep().runAll(workers, out);
+        } finally {
+            workers.shutdown();
+        }
+        assertEquals(1 + 64, out.toString().split("\n").length);
+    }
+
+    @Test(timeout = 20000)
+    public void failingWriterDoesNotHang() {
+        Workers workers = new Workers(2);
+        Writer out = new Writer() {
+                int lines;
+
+                public void write(char[] buf, int off, int len)
+                    throws IOException {
+                    if (++lines > 3)
+                        throw new IOException("disk full");
+                }
+
+                public void flush() {
+                }
+
+                public void close() {
+                }
+            };
+        try {
+            sweep().runAll(workers, out);
+            fail("the error of the writer got lost");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("disk full"));
+        } finally {
+            workers.shutdown();
+        }
+    }
+}
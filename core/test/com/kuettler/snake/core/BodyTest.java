@@ -0,0 +1,148 @@
+
+package com.kuettler.snake.core;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/** Points, directions and stretches of a body by arc length */
+public class BodyTest
+{
+    private static final float EPS = 1e-4f;
+
+    /** An L: 10 right along y = 0, then 5 down along x = 10 */
+    private static Body corner() {
+        Body body = new Body();
+        body.moveTo(0f, 0f);
+        body.lineTo(4f, 0f);
+        body.lineTo(10f, 0f);
+        body.lineTo(10f, 5f);
+        return body;
+    }
+
+    @Test
+    public void pointAtInterpolatesAndClamps() {
+        Body body = corner();
+        State p = new State();
+        body.pointAt(7f, p);
+        assertPoint(7f, 0f, p);
+        body.pointAt(12f, p);
+        assertPoint(10f, 2f, p);
+        body.pointAt(-1f, p);
+        assertPoint(0f, 0f, p);
+        body.pointAt(100f, p);
+        assertPoint(10f, 5f, p);
+    }
+
+    @Test
+    public void tangentAtPointsToTheHead() {
+        Body body = corner();
+        State t = new State();
+        body.tangentAt(5f, t);
+        assertPoint(1f, 0f, t);
+        body.tangentAt(13f, t);
+        assertPoint(0f, 1f, t);
+        body.tangentAt(100f, t);
+        assertPoint(0f, 1f, t);
+
+        Body dot = new Body();
+        dot.moveTo(3f, 3f);
+        dot.tangentAt(0f, t);
+        assertPoint(0f, 0f, t);
+    }
+
+    @Test
+    public void segmentCopiesTheStretch() {
+        Body body = corner();
+        Body out = new Body();
+        body.segment(2f, 12f, out);
+        assertEquals(4, out.size());
+        assertEquals(10f, out.length(), EPS);
+        assertPoint(2f, 0f, out, 0);
+        assertPoint(4f, 0f, out, 1);
+        assertPoint(10f, 0f, out, 2);
+        assertPoint(10f, 2f, out, 3);
+    }
+
+    @Test
+    public void segmentWithinOneSegment() {
+        Body body = corner();
+        Body out = new Body();
+        body.segment(5f, 8f, out);
+        assertEquals(2, out.size());
+        assertPoint(5f, 0f, out, 0);
+        assertPoint(8f, 0f, out, 1);
+    }
+
+    @Test
+    public void segmentOfNoLength() {
+        Body body = corner();
+        Body out = new Body();
+        body.segment(6f, 6f, out);
+        assertEquals(2, out.size());
+        assertEquals(0f, out.length(), 0f);
+        assertPoint(6f, 0f, out, 1);
+
+        // on a point, and reversed ends
+        body.segment(10f, 3f, out);
+        assertEquals(2, out.size());
+        assertEquals(0f, out.length(), 0f);
+        assertPoint(10f, 0f, out, 0);
+    }
+
+    @Test
+    public void segmentToTheHead() {
+        Body body = corner();
+        Body out = new Body();
+        body.segment(4f, body.length(), out);
+        assertEquals(3, out.size());
+        assertEquals(11f, out.length(), EPS);
+        assertPoint(4f, 0f, out, 0);
+        assertPoint(10f, 5f, out, 2);
+
+        body.segment(0f, 1000f, out);
+        assertEquals(body.size(), out.size());
+        assertEquals(body.length(), out.length(), EPS);
+    }
+
+    @Test
+    public void worksAfterTrimming() {
+        Body body = corner();
+        body.trim(8f);
+        // the tail now starts at (7, 0)
+        State p = new State();
+        body.pointAt(0f, p);
+        assertPoint(7f, 0f, p);
+        body.pointAt(5f, p);
+        assertPoint(10f, 2f, p);
+
+        Body out = new Body();
+        body.segment(1f, 4f, out);
+        assertEquals(3, out.size());
+        assertPoint(8f, 0f, out, 0);
+        assertPoint(10f, 0f, out, 1);
+        assertPoint(10f, 1f, out, 2);
+    }
+
+    @Test
+    public void segmentFromFindsWhatSegmentAtFinds() {
+        Body body = corner();
+        body.lineTo(0f, 5f);
+        body.trim(18f);
+        for (int i = -2; i < body.size() + 2; ++i) {
+            for (float s = -1f; s < 20f; s += 0.5f)
+                assertEquals("from " + i + " at " + s, body.segmentAt(s),
+                             body.segmentFrom(i, s));
+        }
+    }
+
+    private static void assertPoint(float x, float y, State p) {
+        assertEquals(x, p.x, EPS);
+        assertEquals(y, p.y, EPS);
+    }
+
+    private static void assertPoint(float x, float y, Body body, int i) {
+        assertEquals(x, body.x(i), EPS);
+        assertEquals(y, body.y(i), EPS);
+    }
+}
@@ -0,0 +1,79 @@
+
+package com.kuettler.snake.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.BitSet;
+
+import org.junit.Test;
+
+/**
+ * The segment-distance test of {@link Collision} against the pixel
+ * test it replaced: stroking the body into a bitmap and sampling the
+ * pixel under the head, which {@link RasterDetector} still does. The
+ * two may only disagree where the head is within a pixel of the edge
+ * of the stroke.
+ */
+public class CollisionTest
+{
+    @Test
+    public void agreesWithPixelTestOnRecordedRuns() throws IOException {
+        byte[][] logs = {
+            Trajectories.random(0, 1800),
+            Trajectories.loops(3600),
+        };
+        float tolerance = new RasterDetector(new Bounds(0, 0, 1, 1)).tolerance();
+        for (byte[] log : logs) {
+            BitSet segments = Trajectories.crashes(log, CollisionDetector.BRUTE_FORCE);
+            BitSet pixels = Trajectories.crashes(log, CollisionDetector.RASTER);
+            assertFalse("runs without a crash test nothing", segments.isEmpty());
+
+            BitSet diff = (BitSet)segments.clone();
+            diff.xor(pixels);
+            assertEquals(0, Trajectories.mismatches(log, diff, tolerance));
+        }
+    }
+
+    @Test
+    public void agreesWithPixelTestAroundABody() {
+        Body body = new Body();
+        body.moveTo(100f, 100f);
+        body.lineTo(300f, 120f);
+        body.lineTo(310f, 300f);
+        body.lineTo(150f, 250f);
+        body.lineTo(200f, 180f);
+        float radius = 5f, length = body.length();
+
+        RasterDetector raster = new RasterDetector(new Bounds(0, 0, 340, 340));
+        float tolerance = raster.tolerance();
+        // the raster also leaves out twice that at the end
+        float shorter = length - 2f*tolerance;
+        int tested = 0;
+        for (float y = 80.25f; y < 320f; y += 1f) {
+            for (float x = 80.25f; x < 330f; x += 1f) {
+                boolean hit = Collision.hits(body, length, x, y, radius);
+                boolean near =
+                    hit != Collision.hits(body, length, x, y, radius + tolerance)
+                    || hit != Collision.hits(body, shorter, x, y, radius - tolerance);
+                if (near)
+                    continue;
+                assertEquals("at " + x + ", " + y, hit,
+                             raster.hits(body, length, x, y, radius));
+                ++tested;
+            }
+        }
+        assertTrue(tested > 40000);
+    }
+
+    @Test
+    public void headOffTheSurfaceIsNoCrash() {
+        Body body = new Body();
+        body.moveTo(10f, 10f);
+        body.lineTo(50f, 10f);
+        assertFalse(Collision.hits(body, body.length(), -500f, 4000f, 5f));
+        assertTrue(Collision.hits(body, body.length(), 30f, 12f, 5f));
+    }
+}
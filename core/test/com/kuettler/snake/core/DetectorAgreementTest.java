@@ -0,0 +1,75 @@
+
+package com.kuettler.snake.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.IOException;
+import java.util.BitSet;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Every collision detector against brute force on the same recorded
+ * runs. The indexed ones have to agree exactly, the raster ones up
+ * to their tolerance.
+ */
+public class DetectorAgreementTest
+{
+    private static byte[][] logs;
+    private static BitSet[] reference;
+
+    @BeforeClass
+    public static void record() throws IOException {
+        logs = new byte[][] {
+            Trajectories.random(1, 1800),
+            Trajectories.random(2, 1800),
+            Trajectories.loops(3600),
+        };
+        reference = new BitSet[logs.length];
+        for (int i = 0; i < logs.length; ++i) {
+            reference[i] = Trajectories.crashes(logs[i],
+                                                CollisionDetector.BRUTE_FORCE);
+            assertFalse("runs without a crash test nothing",
+                        reference[i].isEmpty());
+        }
+    }
+
+    @Test
+    public void gridAgrees() throws IOException {
+        assertAgrees(CollisionDetector.GRID);
+    }
+
+    @Test
+    public void rasterAgrees() throws IOException {
+        assertAgrees(CollisionDetector.RASTER);
+    }
+
+    @Test
+    public void bvhAgrees() throws IOException {
+        assertAgrees(CollisionDetector.BVH);
+    }
+
+    @Test
+    public void occupancyAgrees() throws IOException {
+        assertAgrees(CollisionDetector.OCCUPANCY);
+    }
+
+    private static void assertAgrees(int kind) throws IOException {
+        Bounds bounds = new Bounds(0, 0, Trajectories.WIDTH, Trajectories.HEIGHT);
+        float tolerance = CollisionDetector.create(kind, bounds,
+                                                   new Snake(0).getWidth())
+            .tolerance();
+        for (int i = 0; i < logs.length; ++i) {
+            BitSet diff = Trajectories.crashes(logs[i], kind);
+            diff.xor(reference[i]);
+            if (tolerance == 0f)
+                assertEquals(CollisionDetector.name(kind) + " in run " + i,
+                             new BitSet(), diff);
+            else
+                assertEquals(CollisionDetector.name(kind) + " in run " + i, 0,
+                             Trajectories.mismatches(logs[i], diff, tolerance));
+        }
+    }
+}
@@ -0,0 +1,72 @@
+
+package com.kuettler.snake.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import org.junit.Test;
+
+/**
+ * A paced thread only uses the CPU for its frames' work, and slows
+ * down when the work does not fit into a frame
+ */
+public class FrameSchedulerTest
+{
+    private static final int PACED = 0;
+    private static final int WAITING = 1;
+
+    private static final ThreadMXBean THREADS =
+        ManagementFactory.getThreadMXBean();
+
+    @Test(timeout = 20000)
+    public void pacedFramesLeaveTheCpuIdle() throws InterruptedException {
+        FrameScheduler scheduler = new FrameScheduler(60f, 60);
+        CpuUsage usage = new CpuUsage(2);
+        mark(usage, PACED);
+        run(scheduler, 60, 2000000L);
+        mark(usage, WAITING);
+        // what the render thread does while paused
+        Object lock = new Object();
+        synchronized (lock) {
+            lock.wait(200);
+        }
+        mark(usage, WAITING);
+
+        // 2 ms of work in a 16.7 ms frame
+        assertTrue("paced at " + usage.utilization(PACED),
+                   usage.utilization(PACED) < 0.4f);
+        assertTrue("waiting at " + usage.utilization(WAITING),
+                   usage.utilization(WAITING) < 0.05f);
+    }
+
+    @Test(timeout = 20000)
+    public void slowFramesHalveTheRate() throws InterruptedException {
+        FrameScheduler scheduler = new FrameScheduler(60f, 60);
+        // 18 ms of work does not fit into a 16.7 ms frame
+        run(scheduler, 10, 18000000L);
+        assertEquals(30f, scheduler.getRate(), 0.01f);
+    }
+
+    private static void mark(CpuUsage usage, int state) {
+        usage.mark(state, THREADS.getCurrentThreadCpuTime(),
+                   System.nanoTime());
+    }
+
+    /** Runs frames that each spin for work nanoseconds */
+    private static void run(FrameScheduler scheduler, int frames, long work)
+        throws InterruptedException {
+        for (int i = 0; i < frames; ++i) {
+            long delay = scheduler.delay(System.nanoTime());
+            if (delay > 0)
+                Thread.sleep(delay / 1000000, (int)(delay % 1000000));
+            long start = System.nanoTime();
+            while (System.nanoTime() - start < work)
+                ;
+            long now = System.nanoTime();
+            scheduler.posted(now, now - start);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+
+package com.kuettler.snake.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.BitSet;
+
+import org.junit.Test;
+
+/**
+ * The neck: the stretch behind the head that the head can never
+ * collide with. Too short and a snake crashes into itself running
+ * straight; too long and it winds through its own loops unharmed.
+ */
+public class NeckTest
+{
+    @Test
+    public void straightRunNeverCrashes() throws IOException {
+        // starts out shorter than the neck, and grows past it
+        byte[] log = Trajectories.straight(600);
+        for (int kind = 0; kind < CollisionDetector.KINDS; ++kind)
+            assertEquals(CollisionDetector.name(kind), new BitSet(),
+                         Trajectories.crashes(log, kind));
+    }
+
+    @Test
+    public void tightLoopsCrash() throws IOException {
+        BitSet crashes = Trajectories.crashes(Trajectories.loops(3600),
+                                              CollisionDetector.BRUTE_FORCE);
+        assertFalse(crashes.isEmpty());
+        // not while the loops are still wider than the snake
+        assertTrue(crashes.nextSetBit(0) > 1200);
+    }
+
+    @Test
+    public void neckLengthDoesNotDependOnTheBody() throws IOException {
+        Snake snake = new Snake(0xffff0000);
+        float neck = snake.getNeckLength();
+        assertTrue(neck > snake.getWidth()/2f);
+        Trajectories.replay(Trajectories.random(0, 600), snake, null);
+        assertEquals(neck, snake.getNeckLength(), 0f);
+        assertEquals(snake.body.length() - neck, snake.collisionPrefix(), 1e-3f);
+    }
+
+    @Test
+    public void neckLengthDoesNotDependOnTheDetector() {
+        Snake snake = new Snake(0xffff0000);
+        float neck = snake.getNeckLength();
+        snake.setBoundary(new Bounds(0, 0, 200, 200));
+        for (int kind = 0; kind < CollisionDetector.KINDS; ++kind) {
+            snake.setCollision(kind);
+            assertEquals(CollisionDetector.name(kind), neck,
+                         snake.getNeckLength(), 0f);
+        }
+    }
+
+    @Test
+    public void snapshotLeavesTheSnakeAlone() throws IOException {
+        Snake snake = new Snake(0xffff0000);
+        Trajectories.replay(Trajectories.loops(1200), snake, null);
+        Snapshot a = new Snapshot(), b = new Snapshot();
+        snake.snapshot(a);
+        snake.snapshot(b);
+        assertEquals(a.neckIndex, b.neckIndex);
+        assertEquals(a.neckX, b.neckX, 0f);
+        assertEquals(a.neckY, b.neckY, 0f);
+        assertEquals(snake.collisionPrefix(),
+                     snake.body.arc(a.neckIndex)
+                     + State.length(a.neckX - snake.body.x(a.neckIndex),
+                                    a.neckY - snake.body.y(a.neckIndex)),
+                     1e-2f);
+    }
+}
@@ -0,0 +1,117 @@
+
+package com.kuettler.snake.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * A replay has to end exactly where the recorded run did, including
+ * runs in which the snake ate and grew or changed its settings.
+ */
+public class RecorderTest
+{
+    @Test
+    public void replaysRunWithEating() throws IOException {
+        float w = Trajectories.WIDTH, h = Trajectories.HEIGHT;
+        float dt = Trajectories.DT;
+        Bounds bounds = new Bounds(0, 0, w, h);
+        Random random = new Random(3);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Recorder out = new Recorder(bytes);
+        Snake snake = new Snake(0xffff0000);
+        snake.setMaxLength(300f);
+        snake.setBoundary(bounds);
+        snake.setPosition(w/2f, h/2f);
+        out.reset(snake);
+        Pickups pickups = new Pickups(bounds, 6f, snake.getWidth() + 6f);
+        pickups.scatter(bounds, 200, 40f, random);
+
+        float t = 0f, goalX = 0f, goalY = 0f;
+        int eaten = 0;
+        for (int step = 0; step < 1800; ++step) {
+            if (step % 60 == 0) {
+                goalX = random.nextFloat()*w;
+                goalY = random.nextFloat()*h;
+            }
+            snake.setGoal(goalX, goalY);
+            out.goal(goalX, goalY);
+            snake.integrate(t, dt);
+            t += dt;
+            int n = pickups.eat(snake, 1f);
+            out.step(dt);
+            if (n > 0)
+                out.length(snake);
+            eaten += n;
+        }
+        out.close();
+        assertTrue("nothing eaten", eaten > 0);
+
+        Snake replayed = new Snake(0xffff0000);
+        long steps = Replayer.replay(new ByteArrayInputStream(bytes.toByteArray()),
+                                     replayed, null);
+        assertEquals(1800, steps);
+        assertEquals(snake.getMaxLength(), replayed.getMaxLength(), 0f);
+        assertEquals(snake.pos.x, replayed.pos.x, 0f);
+        assertEquals(snake.pos.y, replayed.pos.y, 0f);
+        assertEquals(snake.body.length(), replayed.body.length(), 0f);
+    }
+
+    @Test
+    public void replaysSettingsAndDetectorSwitches() throws IOException {
+        float w = Trajectories.WIDTH, h = Trajectories.HEIGHT;
+        float dt = Trajectories.DT;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Recorder out = new Recorder(bytes);
+        Snake snake = new Snake(0xffff0000);
+        snake.setGoalDistance(30f);
+        snake.setSimplifyError(1f);
+        snake.setTurnRadius(12f);
+        snake.setCollision(CollisionDetector.OCCUPANCY);
+        snake.setBoundary(new Bounds(0, 0, w, h));
+        snake.setPosition(w/2f, h/2f);
+        out.reset(snake);
+
+        BitSet crashes = new BitSet();
+        float t = 0f;
+        for (int step = 1; step <= 1200; ++step) {
+            if (step == 600) {
+                snake.setCollision(CollisionDetector.RASTER);
+                out.settings(snake);
+            }
+            Circling.steer(snake, w/2f, h/2f, 80f - step*0.06f);
+            out.goal(snake.goal.x, snake.goal.y);
+            snake.integrate(t, dt);
+            t += dt;
+            out.step(dt);
+            if (snake.getMode() == Snake.MODE_CRASH)
+                crashes.set(step);
+        }
+        out.close();
+        assertFalse("runs without a crash test nothing", crashes.isEmpty());
+
+        final BitSet replayedCrashes = new BitSet();
+        Snake replayed = new Snake(0xffff0000);
+        Replayer.replay(new ByteArrayInputStream(bytes.toByteArray()), replayed,
+                        new Replayer.Listener() {
+                            public void onStep(Snake s, long step) {
+                                if (s.getMode() == Snake.MODE_CRASH)
+                                    replayedCrashes.set((int)step);
+                            }
+                        });
+        assertEquals(crashes, replayedCrashes);
+        assertEquals(CollisionDetector.RASTER, replayed.getCollision());
+        assertEquals(30f, replayed.getGoalDistance(), 0f);
+        assertEquals(1f, replayed.getSimplifyError(), 0f);
+        assertEquals(12f, replayed.getTurnRadius(), 0f);
+    }
+}
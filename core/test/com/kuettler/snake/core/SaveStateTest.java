@@ -0,0 +1,54 @@
+
+package com.kuettler.snake.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+/** Saving and restoring have to give back the same snake */
+public class SaveStateTest
+{
+    @Test
+    public void restoresWhatWasSaved() throws IOException {
+        Snake snake = new Snake(0xffff0000);
+        Trajectories.replay(Trajectories.random(0, 300), snake, null);
+        snake.setTurnRadius(40f);
+        snake.setSimplifyError(1.5f);
+
+        Snake restored = new Snake(0xffff0000);
+        SaveState.restore(ByteBuffer.wrap(new SaveState().toByteArray(snake)),
+                          restored);
+        assertEquals(40f, restored.getTurnRadius(), 0f);
+        assertEquals(1.5f, restored.getSimplifyError(), 0f);
+        assertEquals(snake.getNeckLength(), restored.getNeckLength(), 0f);
+        assertEquals(snake.getMaxLength(), restored.getMaxLength(), 0f);
+        assertEquals(snake.body.size(), restored.body.size());
+        assertEquals(snake.body.length(), restored.body.length(), 1e-3f);
+        assertEquals(snake.pos.x, restored.pos.x, 0f);
+        assertEquals(snake.pos.y, restored.pos.y, 0f);
+    }
+
+    @Test
+    public void rejectsBodiesWithoutTwoPoints() throws IOException {
+        Snake snake = new Snake(0xffff0000);
+        Trajectories.replay(Trajectories.random(0, 30), snake, null);
+        byte[] state = new SaveState().toByteArray(snake);
+        int points = state.length - 8*snake.body.size();
+        for (int n = 0; n < 2; ++n) {
+            ByteBuffer b = ByteBuffer.allocate(points + 8*n);
+            b.put(state, 0, points + 8*n);
+            b.putInt(points - 4, n);
+            b.rewind();
+            try {
+                SaveState.restore(b, new Snake(0xffff0000));
+                fail("restored a body of " + n + " points");
+            } catch (IOException e) {
+                // expected
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+
+package com.kuettler.snake.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * The body layer redraws the segments SegmentBoxes finds, so it has
+ * to find every segment crossing a rectangle, not only the nearby ones
+ */
+public class SegmentBoxesTest
+{
+    /** Stroke width of the parallel pass */
+    private static final float WIDTH = 12f;
+
+    @Test
+    public void findsAParallelPassNextToTheTail() {
+        SegmentBoxes boxes = new SegmentBoxes();
+        boxes.reset(0);
+        // right along y = 0, then back left one stroke width below
+        for (int i = 0; i < 40; ++i)
+            boxes.set(i, 10f*i, 0f);
+        for (int i = 0; i < 40; ++i)
+            boxes.set(40 + i, 10f*(39 - i), WIDTH);
+
+        // the tail moves on by two points; the layer clears around
+        // the old segments, grown by half a stroke and a pixel
+        float m = WIDTH/2f + 1f;
+        float left = 0f - 2*m, top = 0f - 2*m;
+        float right = 20f + 2*m, bottom = 0f + 2*m;
+        boxes.trim(2);
+
+        List<Integer> found = find(boxes, left, top, right, bottom);
+        assertTrue(found.toString(), found.contains(2));
+        // the last segments pass under the old tail
+        assertTrue(found.toString(), found.contains(77));
+        assertTrue(found.toString(), found.contains(78));
+        assertEquals(brute(boxes, left, top, right, bottom), found);
+    }
+
+    @Test
+    public void findsWhatAScanFinds() {
+        Random random = new Random(3);
+        SegmentBoxes boxes = new SegmentBoxes();
+        boxes.reset(5);
+        float x = 500f, y = 500f, angle = 0f;
+        for (int step = 0; step < 5000; ++step) {
+            int r = random.nextInt(10);
+            if (r < 6 || boxes.end() - boxes.base() < 3) {
+                angle += 0.6f*(random.nextFloat() - 0.5f);
+                x += 8f*(float)Math.cos(angle);
+                y += 8f*(float)Math.sin(angle);
+                boxes.set(boxes.end(), x, y);
+            } else if (r < 8) {
+                // the head point moves
+                x += 4f*(random.nextFloat() - 0.5f);
+                y += 4f*(random.nextFloat() - 0.5f);
+                boxes.set(boxes.end() - 1, x, y);
+            } else {
+                boxes.trim(boxes.base() + random.nextInt(3));
+            }
+
+            float cx = x + 200f*(random.nextFloat() - 0.5f);
+            float cy = y + 200f*(random.nextFloat() - 0.5f);
+            float s = 40f*random.nextFloat();
+            assertEquals("step " + step,
+                         brute(boxes, cx - s, cy - s, cx + s, cy + s),
+                         find(boxes, cx - s, cy - s, cx + s, cy + s));
+        }
+    }
+
+    private static List<Integer> find(SegmentBoxes boxes, float left,
+                                      float top, float right, float bottom) {
+        List<Integer> found = new ArrayList<Integer>();
+        for (int k = boxes.next(boxes.base(), left, top, right, bottom);
+             k >= 0; k = boxes.next(k + 1, left, top, right, bottom))
+            found.add(k);
+        return found;
+    }
+
+    /** The segments whose bounding box crosses the rectangle */
+    private static List<Integer> brute(SegmentBoxes boxes, float left,
+                                       float top, float right, float bottom) {
+        List<Integer> found = new ArrayList<Integer>();
+        for (int k = boxes.base(); k < boxes.end() - 1; ++k) {
+            float x0 = boxes.x(k), y0 = boxes.y(k);
+            float x1 = boxes.x(k + 1), y1 = boxes.y(k + 1);
+            if (Math.max(x0, x1) >= left && Math.min(x0, x1) <= right &&
+                Math.max(y0, y1) >= top && Math.min(y0, y1) <= bottom)
+                found.add(k);
+        }
+        return found;
+    }
+}
@@ -0,0 +1,135 @@
+
+package com.kuettler.snake.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.Random;
+
+/**
+ * Recorded runs for the tests: seeded steering recorded with
+ * {@link Recorder} into memory, replayed with {@link Replayer} on
+ * snakes with different collision detectors.
+ */
+final class Trajectories
+{
+    private Trajectories() {}
+
+    /** A small phone surface, which keeps the raster detectors quick */
+    static final float WIDTH = 540f, HEIGHT = 960f, DT = 1f/60;
+
+    /** Steering to a new random goal every second */
+    static byte[] random(int seed, int steps) throws IOException {
+        final Random random = new Random(seed);
+        return record(steps, new Steering() {
+                float goalX, goalY;
+
+                public void steer(Snake snake, int step, Recorder out)
+                    throws IOException {
+                    if (step % 60 == 0) {
+                        goalX = random.nextFloat() * WIDTH;
+                        goalY = random.nextFloat() * HEIGHT;
+                    }
+                    goal(snake, goalX, goalY, out);
+                }
+            });
+    }
+
+    /** Straight up, starting with a freshly placed snake */
+    static byte[] straight(int steps) throws IOException {
+        return record(steps, new Steering() {
+                public void steer(Snake snake, int step, Recorder out)
+                    throws IOException {
+                    goal(snake, snake.pos.x, snake.pos.y - 100f, out);
+                }
+            });
+    }
+
+    /**
+     * Circling the centre on a radius that shrinks from 120 down to
+     * a single body width over the run, so that the head winds up in
+     * ever tighter loops and runs into the ones it laid down before
+     */
+    static byte[] loops(final int steps) throws IOException {
+        return record(steps, new Steering() {
+                public void steer(Snake snake, int step, Recorder out)
+                    throws IOException {
+                    float r = 120f + step*(snake.getWidth() - 120f)/steps;
+                    Circling.steer(snake, WIDTH/2f, HEIGHT/2f, r);
+                    out.goal(snake.goal.x, snake.goal.y);
+                }
+            });
+    }
+
+    /** Replays log on snake, which keeps its collision kind */
+    static long replay(byte[] log, Snake snake, Replayer.Listener listener)
+        throws IOException {
+        return Replayer.replay(new ByteArrayInputStream(log), snake, listener,
+                               true);
+    }
+
+    /** The steps of log in which a snake with detector kind crashed */
+    static BitSet crashes(byte[] log, int kind) throws IOException {
+        final BitSet hits = new BitSet();
+        Snake snake = new Snake(0xffff0000);
+        snake.setCollision(kind);
+        replay(log, snake, new Replayer.Listener() {
+                public void onStep(Snake snake, long step) {
+                    if (snake.getMode() == Snake.MODE_CRASH)
+                        hits.set((int)step);
+                }
+            });
+        return hits;
+    }
+
+    /**
+     * How many steps in diff are real disagreements with brute force:
+     * steps that were not near misses for a detector with tolerance
+     */
+    static int mismatches(byte[] log, final BitSet diff, final float tolerance)
+        throws IOException {
+        final int[] count = new int[1];
+        Snake snake = new Snake(0xffff0000);
+        snake.setCollision(CollisionDetector.BRUTE_FORCE);
+        replay(log, snake, new Replayer.Listener() {
+                public void onStep(Snake s, long step) {
+                    if (!diff.get((int)step))
+                        return;
+                    if (!Collision.nearMiss(s, tolerance))
+                        ++count[0];
+                }
+            });
+        return count[0];
+    }
+
+    private interface Steering {
+        void steer(Snake snake, int step, Recorder out) throws IOException;
+    }
+
+    private static void goal(Snake snake, float x, float y, Recorder out)
+        throws IOException {
+        snake.setGoal(x, y);
+        out.goal(x, y);
+    }
+
+    private static byte[] record(int steps, Steering steering)
+        throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Recorder out = new Recorder(bytes);
+        Snake snake = new Snake(0xffff0000);
+        snake.setMaxLength(3000f);
+        snake.setBoundary(new Bounds(0, 0, WIDTH, HEIGHT));
+        snake.setPosition(WIDTH/2f, HEIGHT - 100f);
+        out.reset(snake);
+        float t = 0f;
+        for (int step = 0; step < steps; ++step) {
+            steering.steer(snake, step, out);
+            snake.integrate(t, DT);
+            out.step(DT);
+            t += DT;
+        }
+        out.close();
+        return bytes.toByteArray();
+    }
+}
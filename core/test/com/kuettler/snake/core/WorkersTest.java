@@ -0,0 +1,66 @@
+
+package com.kuettler.snake.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/** Every loop index runs once, and a failed loop is over when run returns */
+public class WorkersTest
+{
+    @Test(timeout = 20000)
+    public void runsEveryIndexOnce() {
+        Workers workers = new Workers(3);
+        try {
+            runsEveryIndexOnce(workers);
+        } finally {
+            workers.shutdown();
+        }
+    }
+
+    @Test(timeout = 20000)
+    public void callerFailureWaitsForTheOthers() throws InterruptedException {
+        Workers workers = new Workers(3);
+        try {
+            final Thread caller = Thread.currentThread();
+            final AtomicInteger calls = new AtomicInteger();
+            try {
+                workers.run(new Workers.Task() {
+                        public void run(int from, int to) {
+                            if (Thread.currentThread() == caller)
+                                throw new IllegalStateException("caller");
+                            calls.incrementAndGet();
+                            try {
+                                Thread.sleep(1);
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                        }
+                    }, 1000, 1);
+                fail("the caller's failure got lost");
+            } catch (IllegalStateException e) {
+            }
+            int after = calls.get();
+            Thread.sleep(50);
+            assertEquals("workers still ran the failed loop", after, calls.get());
+
+            runsEveryIndexOnce(workers);
+        } finally {
+            workers.shutdown();
+        }
+    }
+
+    private static void runsEveryIndexOnce(Workers workers) {
+        final AtomicInteger sum = new AtomicInteger();
+        workers.run(new Workers.Task() {
+                public void run(int from, int to) {
+                    for (int i = from; i < to; ++i)
+                        sum.addAndGet(i);
+                }
+            }, 1000, 7);
+        assertEquals(999*1000/2, sum.get());
+    }
+}
@@ -0,0 +1,225 @@
+package com.kuettler.snake;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.PorterDuff;
+import android.graphics.Rect;
+
+import com.kuettler.snake.core.SegmentBoxes;
+import com.kuettler.snake.core.Snapshot;
+
+/**
+ * The stroked body of a snake, kept in an offscreen bitmap of the
+ * surface size, so that a frame only draws what changed instead of
+ * the whole path.
+ *
+ * Segments new at the head are stamped on top. Where the body went
+ * away or moved, at the tail and at the head point while the body
+ * merges points, the layer is cleared in a rectangle around the old
+ * segments, and every segment that reaches into the rectangle is
+ * drawn again: the ones next to it, and any other part of the body
+ * that passes close by. {@link SegmentBoxes} finds them by chunks of
+ * segments, so an update costs the segments that came or went and a
+ * box test per chunk, not a segment test per point of the body.
+ *
+ * The layer holds the body up to the point before the head. The
+ * renderer strokes the last segment itself every frame, out to where
+ * it draws the head between two steps.
+ *
+ * Like {@link DirtyRegion} this keeps a copy of the drawn points by
+ * absolute index. Only used by the render thread.
+ */
+class BodyLayer
+{
+    private Bitmap mBitmap;
+    private Canvas mCanvas;
+
+    private final Paint mPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Path mPath = new Path();
+    private final Rect mTail = new Rect();
+    private final Rect mHead = new Rect();
+
+    /** The drawn points, by absolute index */
+    private final SegmentBoxes mPoints = new SegmentBoxes();
+
+    private int color;
+    private float width = -1f;
+    private boolean valid;
+
+    /** Bounds of a change, while it is being computed or redrawn */
+    private float left, top, right, bottom;
+
+    public BodyLayer() {
+        mPaint.setStyle(Paint.Style.STROKE);
+        mPaint.setStrokeCap(Paint.Cap.ROUND);
+        mPaint.setStrokeJoin(Paint.Join.ROUND);
+    }
+
+    /**
+     * Makes the layer w by h pixels. A new size allocates a new
+     * bitmap and draws the body from scratch on the next update.
+     */
+    public void setSize(int w, int h) {
+        if (mBitmap != null && mBitmap.getWidth() == w
+            && mBitmap.getHeight() == h)
+            return;
+        release();
+        if (w <= 0 || h <= 0)
+            return;
+        mBitmap = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
+        mCanvas = new Canvas(mBitmap);
+    }
+
+    /** Frees the bitmap; the layer is unusable until setSize */
+    public void release() {
+        if (mBitmap != null)
+            mBitmap.recycle();
+        mBitmap = null;
+        mCanvas = null;
+        valid = false;
+    }
+
+    public boolean isReady() {
+        return mBitmap != null;
+    }
+
+    /** Makes the next update draw the body from scratch */
+    public void invalidate() {
+        valid = false;
+    }
+
+    /** Brings the layer up to date with the body in s, but its head */
+    public void update(Snapshot s) {
+        SegmentBoxes p = mPoints;
+        int count = s.count - 1;
+        if (!valid || count < 2 || s.color != color || s.width != width ||
+            s.base < p.base() || s.base >= p.end() ||
+            s.base + count < p.end()) {
+            rebuild(s, count);
+            return;
+        }
+
+        // the trimmed tail and the new tip; the segment after the tip
+        // is drawn again too
+        int base = p.base();
+        boolean tail = s.base > base ||
+            s.points[0] != p.x(base) || s.points[1] != p.y(base);
+        if (tail) {
+            start();
+            for (int k = base; k <= s.base + 1 && k < p.end(); ++k)
+                add(p.x(k), p.y(k));
+            p.trim(s.base);
+            p.set(s.base, s.points[0], s.points[1]);
+            add(s.points[0], s.points[1]);
+            finish(mTail);
+        }
+
+        // the old head point, which moves while the body merges points
+        int head = p.end() - 1;
+        int h = 2*(head - s.base);
+        boolean moved = head > p.base() &&
+            (s.points[h] != p.x(head) || s.points[h+1] != p.y(head));
+        if (moved) {
+            start();
+            add(p.x(head - 1), p.y(head - 1));
+            add(p.x(head), p.y(head));
+            p.set(head, s.points[h], s.points[h+1]);
+            add(s.points[h], s.points[h+1]);
+            finish(mHead);
+        }
+
+        // the new head segments are stamped on top
+        int last = s.base + count - 1;
+        for (int k = p.end(); k <= last; ++k) {
+            int i = 2*(k - s.base);
+            p.set(k, s.points[i], s.points[i+1]);
+            mCanvas.drawLine(p.x(k - 1), p.y(k - 1),
+                             s.points[i], s.points[i+1], mPaint);
+        }
+
+        if (tail)
+            redraw(mTail);
+        if (moved)
+            redraw(mHead);
+    }
+
+    /** Draws the layer onto canvas */
+    public void draw(Canvas canvas) {
+        canvas.drawBitmap(mBitmap, 0f, 0f, null);
+    }
+
+    /** Clears the layer and draws the first count points of s */
+    private void rebuild(Snapshot s, int count) {
+        color = s.color;
+        width = s.width;
+        mPaint.setColor(color);
+        mPaint.setStrokeWidth(width);
+
+        SegmentBoxes p = mPoints;
+        p.reset(s.base);
+        for (int i = 0; i < count; ++i)
+            p.set(s.base + i, s.points[2*i], s.points[2*i+1]);
+        valid = count >= 2;
+
+        mBitmap.eraseColor(Color.TRANSPARENT);
+        if (!valid)
+            return;
+        mPath.rewind();
+        mPath.moveTo(p.x(p.base()), p.y(p.base()));
+        for (int k = p.base() + 1; k < p.end(); ++k)
+            mPath.lineTo(p.x(k), p.y(k));
+        mCanvas.drawPath(mPath, mPaint);
+    }
+
+    /**
+     * Clears r and draws every segment that reaches into it again,
+     * wherever it lies along the body
+     */
+    private void redraw(Rect r) {
+        // the segments whose stroke reaches into r
+        float m = width/2f + 1f;
+        left = r.left - m;
+        top = r.top - m;
+        right = r.right + m;
+        bottom = r.bottom + m;
+
+        mCanvas.save();
+        mCanvas.clipRect(r);
+        mCanvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+        mPath.rewind();
+        SegmentBoxes p = mPoints;
+        int last = -2;
+        for (int k = p.next(p.base(), left, top, right, bottom); k >= 0;
+             k = p.next(k + 1, left, top, right, bottom)) {
+            if (k != last + 1)
+                mPath.moveTo(p.x(k), p.y(k));
+            mPath.lineTo(p.x(k + 1), p.y(k + 1));
+            last = k;
+        }
+        mCanvas.drawPath(mPath, mPaint);
+        mCanvas.restore();
+    }
+
+    private void start() {
+        left = top = Float.POSITIVE_INFINITY;
+        right = bottom = Float.NEGATIVE_INFINITY;
+    }
+
+    private void add(float x, float y) {
+        if (x < left) left = x;
+        if (x > right) right = x;
+        if (y < top) top = y;
+        if (y > bottom) bottom = y;
+    }
+
+    /** Sets r to the bounds of the change, grown by the stroke */
+    private void finish(Rect r) {
+        // half the stroke, and one more pixel for anti-aliasing
+        float m = width/2f + 1f;
+        r.set((int)Math.floor(left - m), (int)Math.floor(top - m),
+              (int)Math.ceil(right + m), (int)Math.ceil(bottom + m));
+    }
+}
@@ -0,0 +1,167 @@
+
+package com.kuettler.snake;
+
+import android.graphics.Rect;
+
+import com.kuettler.snake.core.Snapshot;
+
+/**
+ * Works out which part of the surface changed between the last drawn
+ * frame and the next snapshot: the new head segments, the tail
+ * segments trimmed since, the head circle and the last segment drawn
+ * out to it at their old and new place and, when drawn, the end of
+ * the collision overlay. Items appearing or being eaten are rare and
+ * redraw everything.
+ *
+ * Keeps a copy of the drawn body points by absolute index, so that
+ * the trimmed tail can be bounded after the snapshot has forgotten
+ * it. Each update only touches the points that came or went, and
+ * the head point, which moves while the body merges points.
+ */
+class DirtyRegion
+{
+    private float[] xs = new float[256];
+    private float[] ys = new float[256];
+    private int mask = 255;
+
+    /** Absolute indices of the drawn points */
+    private int base, end;
+
+    private float headX, headY;
+    private float neckX, neckY;
+    private float width;
+    private int mode;
+    private int pickupVersion;
+    private boolean valid;
+
+    /** Bounds of the change, while it is being computed */
+    private float left, top, right, bottom;
+
+    /** Forces the next update to ask for a full redraw */
+    public void invalidate() {
+        valid = false;
+    }
+
+    /**
+     * Computes the area that differs between the last frame and s
+     * drawn with its head at (hx, hy), and remembers s as drawn.
+     * Returns false if the whole surface has to be redrawn; dirty is
+     * then left alone. An empty dirty rect means nothing changed.
+     */
+    public boolean update(Snapshot s, float hx, float hy, Rect dirty) {
+        boolean tail = SnakeRenderer.DEBUG_TAIL;
+        if (!valid || s.count < 2 || (tail && s.mode != mode) ||
+            s.width != width || s.pickupVersion != pickupVersion ||
+            s.base < base || s.base >= end || s.base + s.count < end) {
+            reset(s, hx, hy);
+            return false;
+        }
+
+        left = top = Float.POSITIVE_INFINITY;
+        right = bottom = Float.NEGATIVE_INFINITY;
+
+        // the last segment is drawn from the point before the head
+        // point out to the head
+        float fromX = xs[(end - 2) & mask], fromY = ys[(end - 2) & mask];
+
+        // the trimmed tail, including the old and new tip
+        for (int k = base; k <= s.base; ++k)
+            add(xs[k & mask], ys[k & mask]);
+        base = s.base;
+        store(base, s.points[0], s.points[1]);
+        add(s.points[0], s.points[1]);
+
+        // the old head point, which may have moved since when the
+        // body merged points; all points before it stay put
+        int head = end - 1;
+        int h = 2*(head - s.base);
+        if (head > base &&
+            (s.points[h] != xs[head & mask] || s.points[h+1] != ys[head & mask])) {
+            add(xs[(head - 1) & mask], ys[(head - 1) & mask]);
+            add(xs[head & mask], ys[head & mask]);
+            store(head, s.points[h], s.points[h+1]);
+            add(s.points[h], s.points[h+1]);
+        }
+
+        // the new head segments, starting at the old head
+        int last = s.base + s.count - 1;
+        if (last >= end) {
+            add(xs[(end - 1) & mask], ys[(end - 1) & mask]);
+            for (int k = end; k <= last; ++k) {
+                int i = 2*(k - s.base);
+                store(k, s.points[i], s.points[i+1]);
+                add(s.points[i], s.points[i+1]);
+            }
+            end = last + 1;
+        }
+
+        if (hx != headX || hy != headY) {
+            add(fromX, fromY);
+            add(headX, headY);
+            add(xs[(end - 2) & mask], ys[(end - 2) & mask]);
+            add(hx, hy);
+            headX = hx;
+            headY = hy;
+        }
+        if (tail && (s.neckX != neckX || s.neckY != neckY)) {
+            add(neckX, neckY);
+            add(s.neckX, s.neckY);
+            neckX = s.neckX;
+            neckY = s.neckY;
+        }
+
+        if (left > right) {
+            dirty.setEmpty();
+        } else {
+            // the head circle has a radius of width, the stroke half
+            // of that; one more pixel for anti-aliasing
+            float m = width + 1f;
+            dirty.set((int)Math.floor(left - m), (int)Math.floor(top - m),
+                      (int)Math.ceil(right + m), (int)Math.ceil(bottom + m));
+        }
+        return true;
+    }
+
+    private void reset(Snapshot s, float hx, float hy) {
+        base = end = s.base;
+        for (int i = 0; i < s.count; ++i)
+            store(s.base + i, s.points[2*i], s.points[2*i+1]);
+        end = s.base + s.count;
+        headX = hx;
+        headY = hy;
+        neckX = s.neckX;
+        neckY = s.neckY;
+        width = s.width;
+        mode = s.mode;
+        pickupVersion = s.pickupVersion;
+        valid = s.count >= 2;
+    }
+
+    private void add(float x, float y) {
+        if (x < left) left = x;
+        if (x > right) right = x;
+        if (y < top) top = y;
+        if (y > bottom) bottom = y;
+    }
+
+    /** Sets the drawn point k, growing the buffer as needed */
+    private void store(int k, float x, float y) {
+        if (k - base >= xs.length) {
+            int capacity = xs.length;
+            while (k - base >= capacity)
+                capacity *= 2;
+            int m = capacity - 1;
+            float[] nxs = new float[capacity];
+            float[] nys = new float[capacity];
+            for (int j = base; j < end; ++j) {
+                nxs[j & m] = xs[j & mask];
+                nys[j & m] = ys[j & mask];
+            }
+            xs = nxs;
+            ys = nys;
+            mask = m;
+        }
+        xs[k & mask] = x;
+        ys[k & mask] = y;
+    }
+}
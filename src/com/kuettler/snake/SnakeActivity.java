@@ -9,8 +9,12 @@ import android.view.MenuItem;
 import android.widget.FrameLayout;
 import android.widget.TextView;
 
+import java.io.File;
+import java.io.IOException;
+
 import com.kuettler.snake.SnakeView;
 import com.kuettler.snake.SnakeView.SnakeThread;
+import com.kuettler.snake.core.CollisionDetector;
 
 
 public class SnakeActivity extends Activity
@@ -19,6 +23,9 @@ public class SnakeActivity extends Activity
 
     private SnakeThread mSnakeThread;
 
+    /** The file of the save slot */
+    private static final String SAVE_SLOT = "slot0.sav";
+
     /** Called when the activity is first created. */
     @Override
     public void onCreate(Bundle savedInstanceState) {
@@ -31,6 +38,9 @@ public class SnakeActivity extends Activity
         mSnakeThread = snakeview.getThread();
 
         snakeview.setTextView((TextView) findViewById(R.id.text));
+
+        if (savedInstanceState != null)
+            mSnakeThread.restoreState(savedInstanceState);
     }
 
 
@@ -65,6 +75,14 @@ public class SnakeActivity extends Activity
     private static final int MENU_STOP = 1;
     private static final int MENU_PAUSE = 2;
     private static final int MENU_RESUME = 3;
+    private static final int MENU_STATS = 4;
+    private static final int MENU_DUMP_STATS = 5;
+    private static final int MENU_RECORD = 6;
+    private static final int MENU_SAVE = 7;
+    private static final int MENU_LOAD = 8;
+    private static final int MENU_FRAME_RATE = 9;
+    private static final int MENU_STEP_RATE = 10;
+    private static final int MENU_COLLISION = 11;
 
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
@@ -74,6 +92,14 @@ public class SnakeActivity extends Activity
         menu.add(0, MENU_STOP, 0, R.string.menu_stop);
         menu.add(0, MENU_PAUSE, 0, R.string.menu_pause);
         menu.add(0, MENU_RESUME, 0, R.string.menu_resume);
+        menu.add(0, MENU_STATS, 0, R.string.menu_stats);
+        menu.add(0, MENU_DUMP_STATS, 0, R.string.menu_dump_stats);
+        menu.add(0, MENU_RECORD, 0, R.string.menu_record);
+        menu.add(0, MENU_SAVE, 0, R.string.menu_save);
+        menu.add(0, MENU_LOAD, 0, R.string.menu_load);
+        menu.add(0, MENU_FRAME_RATE, 0, R.string.menu_frame_rate);
+        menu.add(0, MENU_STEP_RATE, 0, R.string.menu_step_rate);
+        menu.add(0, MENU_COLLISION, 0, R.string.menu_collision);
 
         return true;
     }
@@ -94,6 +120,53 @@ public class SnakeActivity extends Activity
         case MENU_RESUME:
             mSnakeThread.unpause();
             return true;
+        case MENU_STATS:
+            mSnakeThread.setStatsOverlay(!mSnakeThread.getStatsOverlay());
+            return true;
+        case MENU_DUMP_STATS:
+            File file = new File(getFilesDir(), "stats.txt");
+            try {
+                mSnakeThread.dumpStats(file);
+                Log.d(TAG, "Stats written to " + file);
+            } catch (IOException e) {
+                Log.e(TAG, "Cannot write " + file, e);
+            }
+            return true;
+        case MENU_RECORD:
+            if (mSnakeThread.isRecording())
+                mSnakeThread.stopRecording();
+            else
+                mSnakeThread.startRecording(new File(getFilesDir(), "run.snk"));
+            return true;
+        case MENU_SAVE:
+            try {
+                mSnakeThread.saveSlot(new File(getFilesDir(), SAVE_SLOT));
+            } catch (IOException e) {
+                Log.e(TAG, "Cannot save game", e);
+            }
+            return true;
+        case MENU_FRAME_RATE:
+            // cycles through 30, 60 and 120 Hz
+            int hz = mSnakeThread.getFrameRate();
+            mSnakeThread.setFrameRate(hz >= 120 ? 30 : 2*hz);
+            return true;
+        case MENU_STEP_RATE:
+            // physics steps per second, also through 30, 60 and 120
+            int steps = mSnakeThread.getStepRate();
+            mSnakeThread.setStepRate(steps >= 120 ? 30 : 2*steps);
+            return true;
+        case MENU_COLLISION:
+            // cycles through the collision detectors
+            mSnakeThread.setCollision((mSnakeThread.getCollision() + 1)
+                                      % CollisionDetector.KINDS);
+            return true;
+        case MENU_LOAD:
+            try {
+                mSnakeThread.loadSlot(new File(getFilesDir(), SAVE_SLOT));
+            } catch (IOException e) {
+                Log.e(TAG, "Cannot load game", e);
+            }
+            return true;
         }
         return false;
     }
@@ -0,0 +1,142 @@
+
+package com.kuettler.snake;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Rect;
+
+import com.kuettler.snake.core.Snake;
+import com.kuettler.snake.core.Snapshot;
+
+/**
+ * Draws snapshots of a snake. Paints are built once per colour and
+ * width and the paths are reused, so drawing a frame does not
+ * allocate. With a layer set up, the body comes from a
+ * {@link BodyLayer} instead of being stroked anew every frame.
+ */
+class SnakeRenderer
+{
+    /**
+     * DEBUG: draw the part of the body the head can collide with on
+     * top, white while crashed. Compiled out when false.
+     */
+    static final boolean DEBUG_TAIL = false;
+
+    private final Path mBody = new Path();
+    private final Path mTail = new Path();
+
+    private final Paint mBodyPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mHeadPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mTailPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mCrashPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mPickupPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mTextPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private static final float TEXT_SIZE = 14f;
+
+    private final BodyLayer mLayer = new BodyLayer();
+    private boolean mUseLayer;
+
+    /** What the paints are set up for */
+    private int mColor;
+    private float mWidth = -1f;
+
+    public SnakeRenderer() {
+        mBodyPaint.setStyle(Paint.Style.STROKE);
+        mBodyPaint.setStrokeCap(Paint.Cap.ROUND);
+        mBodyPaint.setStrokeJoin(Paint.Join.ROUND);
+
+        mHeadPaint.setStyle(Paint.Style.FILL);
+        mHeadPaint.setColor(Color.YELLOW);
+
+        mTailPaint.set(mBodyPaint);
+        mTailPaint.setColor(Color.GREEN);
+        mCrashPaint.set(mBodyPaint);
+        mCrashPaint.setColor(Color.WHITE);
+
+        mPickupPaint.setStyle(Paint.Style.FILL);
+        mPickupPaint.setColor(Color.CYAN);
+
+        mTextPaint.setColor(Color.WHITE);
+        mTextPaint.setTextSize(TEXT_SIZE);
+    }
+
+    /**
+     * Draws the body through a layer of w by h pixels, or strokes it
+     * every frame again if use is false. The layer is redrawn from
+     * scratch on the next frame either way.
+     */
+    public void setLayer(boolean use, int w, int h) {
+        mUseLayer = use;
+        if (use)
+            mLayer.setSize(w, h);
+        else
+            mLayer.release();
+        mLayer.invalidate();
+    }
+
+    /** Draws the items and the snake with its head at (hx, hy) */
+    public void draw(Canvas canvas, Snapshot s, float hx, float hy) {
+        float[] items = s.pickups;
+        for (int i = 0; i < s.pickupCount; ++i)
+            canvas.drawCircle(items[2*i], items[2*i+1], s.pickupRadius,
+                              mPickupPaint);
+
+        if (s.count == 0)
+            return;
+        if (s.color != mColor || s.width != mWidth)
+            setUp(s.color, s.width);
+
+        // the last segment ends at the interpolated head and not at
+        // the head point, which lies up to a step ahead
+        float[] pts = s.points;
+        int n = s.count - 1;
+        if (mUseLayer && mLayer.isReady()) {
+            mLayer.update(s);
+            mLayer.draw(canvas);
+            if (n > 0)
+                canvas.drawLine(pts[2*n-2], pts[2*n-1], hx, hy, mBodyPaint);
+        } else {
+            mBody.rewind();
+            mBody.moveTo(pts[0], pts[1]);
+            for (int i = 1; i < n; ++i)
+                mBody.lineTo(pts[2*i], pts[2*i+1]);
+            if (n > 0)
+                mBody.lineTo(hx, hy);
+            canvas.drawPath(mBody, mBodyPaint);
+        }
+
+        canvas.drawCircle(hx, hy, s.width, mHeadPaint);
+
+        if (DEBUG_TAIL) {
+            mTail.rewind();
+            mTail.moveTo(pts[0], pts[1]);
+            for (int i = 1; i <= s.neckIndex; ++i)
+                mTail.lineTo(pts[2*i], pts[2*i+1]);
+            mTail.lineTo(s.neckX, s.neckY);
+            canvas.drawPath(mTail, s.mode == Snake.MODE_CRASH
+                            ? mCrashPaint : mTailPaint);
+        }
+    }
+
+    /**
+     * Draws lines of text in the top left corner and sets bounds to
+     * the area they may cover.
+     */
+    public void drawStats(Canvas canvas, String[] lines, Rect bounds) {
+        float step = TEXT_SIZE + 2f;
+        for (int i = 0; i < lines.length; ++i)
+            canvas.drawText(lines[i], 4f, (i + 1)*step, mTextPaint);
+        bounds.set(0, 0, 40*(int)TEXT_SIZE, (int)((lines.length + 1)*step));
+    }
+
+    private void setUp(int color, float width) {
+        mColor = color;
+        mWidth = width;
+        mBodyPaint.setColor(color);
+        mBodyPaint.setStrokeWidth(width);
+        mTailPaint.setStrokeWidth(width);
+        mCrashPaint.setStrokeWidth(width);
+    }
+}
@@ -4,26 +4,49 @@ package com.kuettler.snake;
 import android.content.Context;
 import android.graphics.Canvas;
 import android.graphics.Color;
-import android.graphics.Paint;
-import android.graphics.PointF;
 import android.graphics.Rect;
 import android.os.Bundle;
+import android.os.Debug;
 import android.os.Handler;
 import android.os.Message;
 import android.os.Vibrator;
 import android.util.AttributeSet;
-import android.util.FloatMath;
 import android.util.Log;
 import android.view.GestureDetector;
 import android.view.MotionEvent;
 import android.view.SurfaceHolder;
 import android.view.SurfaceView;
 import android.view.View;
+import android.view.WindowManager;
 import android.widget.TextView;
 
-import android.graphics.Path;
-import android.graphics.PathMeasure;
-import android.graphics.Bitmap;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import com.kuettler.snake.core.Bounds;
+import com.kuettler.snake.core.CollisionDetector;
+import com.kuettler.snake.core.CpuUsage;
+import com.kuettler.snake.core.FrameScheduler;
+import com.kuettler.snake.core.FrameStats;
+import com.kuettler.snake.core.GoalMailbox;
+import com.kuettler.snake.core.InputQueue;
+import com.kuettler.snake.core.Pickups;
+import com.kuettler.snake.core.Recorder;
+import com.kuettler.snake.core.SaveState;
+import com.kuettler.snake.core.Snake;
+import com.kuettler.snake.core.Snapshot;
+import com.kuettler.snake.core.SnapshotBuffer;
 
 public class SnakeView extends SurfaceView implements SurfaceHolder.Callback
 {
@@ -40,10 +63,7 @@ public class SnakeView extends SurfaceView implements SurfaceHolder.Callback
         private Handler mHandler;
 
         /** Indicate whether the surface has been created & is ready to draw */
-        private boolean mRun = false;
-
-        /** Used to figure out elapsed time between frames */
-        private long mLastTime;
+        private volatile boolean mRun = false;
 
         /*
          * State-tracking constants
@@ -57,31 +77,213 @@ public class SnakeView extends SurfaceView implements SurfaceHolder.Callback
         private Snake snake;
 
         /** The state of the game. One of READY, RUNNING, PAUSE, LOSE, or WIN */
-        private int mMode;
+        private volatile int mMode;
+
+        /** Runs the physics; this thread only draws */
+        private final Simulation mSimulation = new Simulation();
+
+        /** Snapshots of the snake, from the simulation to this thread */
+        private final SnapshotBuffer mSnapshots = new SnapshotBuffer();
+
+        /** Input events, from the UI thread to the simulation */
+        private final InputQueue mInput = new InputQueue(6);
+
+        /** The newest touch goal, picked up once per simulation round */
+        private final GoalMailbox mGoals = new GoalMailbox();
+
+        protected long last_vibrate_time = 0;
+        protected final long vibrate_length = 40;
+        protected final Vibrator vibrator;
+
+        /** Whether to redraw only what changed since the last frame */
+        private volatile boolean mDirtyRendering = true;
+
+        /** Set when the surface has to be drawn in full */
+        private volatile boolean mFullRedraw = true;
+
+        /** Whether the body is kept in an offscreen layer */
+        private volatile boolean mLayerRendering = true;
+
+        /** Size of the surface, for the layer */
+        private volatile int mSurfaceWidth, mSurfaceHeight;
+
+        private final DirtyRegion mDirtyRegion = new DirtyRegion();
+        private final Rect mDirty = new Rect();
+
+        /** Paces the frames to the display */
+        private final FrameScheduler mScheduler;
+
+        /** Number of snapshots published, and of the last one drawn */
+        private volatile long mPublished;
+        private long mDrawn = -1;
+
+        /** CPU use of this thread and the simulation, by game state */
+        private final CpuUsage mRenderCpu = new CpuUsage(STATE_WIN + 1);
+        private final CpuUsage mSimulationCpu = new CpuUsage(STATE_WIN + 1);
+
+        private final SnakeRenderer mRenderer = new SnakeRenderer();
+
+        /** Timings of the game loop phases */
+        private final FrameStats mStats = new FrameStats();
+
+        /** Whether to show mStats on screen */
+        private volatile boolean mStatsOverlay = false;
+
+        /** The overlay text, refreshed every STATS_NANOS */
+        private String[] mStatsLines;
+        private long mStatsTime;
+        private final Rect mStatsRect = new Rect();
+        private static final long STATS_NANOS = 500000000L;
+
+        /** Where the simulation should record to, null for nowhere */
+        private volatile File mRecordTo;
+
+        /** The collision detector the simulation should switch to */
+        private volatile int mCollision = CollisionDetector.GRID;
+
+        /**
+         * A saved state for the simulation to restore once the
+         * surface size is known
+         */
+        private final AtomicReference<ByteBuffer> mRestore =
+            new AtomicReference<ByteBuffer>();
+
+        /**
+         * Encodes saves; used by the simulation, or by whoever saves
+         * once it has ended
+         */
+        private final SaveState mSaveState = new SaveState();
+
+        /**
+         * A save asked for by the UI thread, and the encoded state the
+         * simulation answers with after its round
+         */
+        private final AtomicReference<SaveRequest> mSaveWanted =
+            new AtomicReference<SaveRequest>();
+
+        /** How long a save waits for the simulation to answer */
+        private static final long SAVE_TIMEOUT_MS = 1000;
+
+        private static final String KEY_STATE = "snake.state";
+
+        /** When the last frame was posted, 0 after idling */
+        private long mLastPost;
 
         public SnakeThread(SurfaceHolder holder, SnakeView view, Context context,
                           Handler handler) {
             mSurfaceHolder = holder;
             mView = view;
             mHandler = handler;
+            vibrator = (Vibrator)context.getSystemService(Context.VIBRATOR_SERVICE);
 
             snake = new Snake(Color.RED);
+            snake.setStats(mStats);
+
+            WindowManager wm =
+                (WindowManager)context.getSystemService(Context.WINDOW_SERVICE);
+            mScheduler = new FrameScheduler(wm.getDefaultDisplay().getRefreshRate(),
+                                            60);
+            mStats.setFrameNanos(mScheduler.interval());
         }
 
         public void setRunning(boolean b) {
             mRun = b;
+            if (!b) {
+                wakeRenderer();
+                wakeSimulation();
+            }
+        }
+
+        /** Wakes this thread if it waits for something to draw */
+        private void wakeRenderer() {
+            LockSupport.unpark(this);
+        }
+
+        /** Wakes the simulation if it waits for something to do */
+        private void wakeSimulation() {
+            LockSupport.unpark(mSimulation);
+        }
+
+        /** Draws at most hz frames per second, e.g. 30, 60 or 120 */
+        public void setFrameRate(int hz) {
+            mScheduler.setTargetRate(hz);
+        }
+
+        public int getFrameRate() {
+            return mScheduler.getTargetRate();
         }
 
         @Override
         public void run() {
+            mSimulation.start();
+
             while (mRun) {
+                mRenderCpu.mark(mMode, Debug.threadCpuTimeNanos(),
+                                System.nanoTime());
+                // wakeups for new snapshots come early; wait out the
+                // whole delay
+                for (long wait = mScheduler.delay(System.nanoTime());
+                     wait > 0 && mRun;
+                     wait = mScheduler.delay(System.nanoTime()))
+                    LockSupport.parkNanos(wait);
+
+                // read before taking the snapshot, so that one
+                // published in between is not taken as drawn
+                long published = mPublished;
+                Snapshot snapshot = mSnapshots.latest();
+                float alpha = snapshot.alpha(System.nanoTime());
+                float hx = snapshot.prevX + alpha*(snapshot.x - snapshot.prevX);
+                float hy = snapshot.prevY + alpha*(snapshot.y - snapshot.prevY);
+
+                Rect dirty = null;
+                boolean full = mFullRedraw;
+                if (full) {
+                    mFullRedraw = false;
+                    mDirtyRegion.invalidate();
+                    // the surface may have a new size, or the snake a
+                    // whole new body
+                    mRenderer.setLayer(mLayerRendering, mSurfaceWidth,
+                                       mSurfaceHeight);
+                }
+                boolean stats = mStatsOverlay && updateStatsLines();
+                // between steps the head is interpolated, so a running
+                // snake always moves
+                if (!full && !stats && snapshot.step == 0
+                    && published == mDrawn) {
+                    idle();
+                    continue;
+                }
+                mDrawn = published;
+
+                boolean partial = mDirtyRendering &&
+                    mDirtyRegion.update(snapshot, hx, hy, mDirty);
+                if (partial) {
+                    if (stats)
+                        mDirty.union(mStatsRect);
+                    if (mDirty.isEmpty()) {
+                        idle();
+                        continue;
+                    }
+                    dirty = mDirty;
+                }
+
                 Canvas canvas = null;
+                long t0 = System.nanoTime();
+                long work = 0;
                 try {
-                    canvas = mSurfaceHolder.lockCanvas(null);
-                    synchronized (mSurfaceHolder) {
-                        if (mMode == STATE_RUNNING) updatePhysics();
+                    // lockCanvas may grow dirty; everything in it is
+                    // cleared and redrawn, clipped to it
+                    canvas = mSurfaceHolder.lockCanvas(dirty);
+                    if (canvas != null) {
+                        long t1 = System.nanoTime();
+                        mStats.record(FrameStats.LOCK, t1 - t0);
                         canvas.drawColor(Color.BLACK);
-                        snake.draw(canvas);
+                        mRenderer.draw(canvas, snapshot, hx, hy);
+                        if (mStatsOverlay && mStatsLines != null)
+                            mRenderer.drawStats(canvas, mStatsLines, mStatsRect);
+                        t0 = System.nanoTime();
+                        work = t0 - t1;
+                        mStats.record(FrameStats.DRAW, work);
                     }
                 } finally {
                     // do this in a finally so that if an exception is thrown
@@ -89,24 +291,139 @@ public class SnakeView extends SurfaceView implements SurfaceHolder.Callback
                     // inconsistent state
                     if (canvas != null) {
                         mSurfaceHolder.unlockCanvasAndPost(canvas);
+                        long t2 = System.nanoTime();
+                        mStats.record(FrameStats.POST, t2 - t0);
+                        if (mLastPost != 0)
+                            mStats.frame(t2 - mLastPost);
+                        mLastPost = t2;
+                        mScheduler.posted(t2, work);
+                        mStats.setFrameNanos(mScheduler.interval());
                     }
                 }
             }
+
+            mRenderer.setLayer(false, 0, 0);
+
+            boolean retry = true;
+            while (retry) {
+                try {
+                    mSimulation.join();
+                    retry = false;
+                } catch (InterruptedException e) {
+                }
+            }
         }
 
-        public void setState(int mode) {
-            synchronized (mSurfaceHolder) {
-                mMode = mode;
-                Log.d(TAG, "Mode is now " + mode);
+        /**
+         * Nothing changed: sleeps until the simulation publishes, a
+         * redraw is requested or the overlay is due.
+         */
+        private void idle() {
+            mLastPost = 0;
+            mScheduler.idle();
+            if (mStatsOverlay)
+                LockSupport.parkNanos(this, STATS_NANOS);
+            else
+                LockSupport.park(this);
+        }
+
+        /**
+         * Restarts the snake and records the run from there to file,
+         * until stopRecording(). See {@link Recorder}.
+         */
+        public void startRecording(File file) {
+            mRecordTo = file;
+            wakeSimulation();
+        }
+
+        public void stopRecording() {
+            mRecordTo = null;
+            wakeSimulation();
+        }
+
+        /** Switches the snake to another kind of collision detector */
+        public void setCollision(int kind) {
+            mCollision = kind;
+            wakeSimulation();
+        }
+
+        public int getCollision() {
+            return mCollision;
+        }
+
+        public boolean isRecording() {
+            return mRecordTo != null;
+        }
+
+        /** Timings of the game loop, readable from any thread */
+        public FrameStats getStats() {
+            return mStats;
+        }
+
+        /** Shows or hides the timings in a corner of the surface */
+        public void setStatsOverlay(boolean show) {
+            mStatsOverlay = show;
+            mFullRedraw = true;
+            wakeRenderer();
+        }
+
+        public boolean getStatsOverlay() {
+            return mStatsOverlay;
+        }
+
+        /** Writes the timings to file, see {@link FrameStats#dump} */
+        public void dumpStats(File file) throws IOException {
+            Writer out = new BufferedWriter(new FileWriter(file));
+            try {
+                mStats.dump(out);
+                out.write("# state render_cpu simulation_cpu wall_ms\n");
+                for (int state = 0; state <= STATE_WIN; ++state) {
+                    long wall = mRenderCpu.wallNanos(state);
+                    if (wall > 0)
+                        out.write("cpu " + state + " "
+                                  + mRenderCpu.utilization(state) + " "
+                                  + mSimulationCpu.utilization(state) + " "
+                                  + wall / 1000000 + "\n");
+                }
+            } finally {
+                out.close();
             }
+        }
+
+        /** CPU use in state of this thread and the simulation */
+        private String percent(int state) {
+            return Math.round(100*mRenderCpu.utilization(state)) + "%+"
+                + Math.round(100*mSimulationCpu.utilization(state)) + "%";
+        }
+
+        /** Rebuilds the overlay text if it is due; returns whether it did */
+        private boolean updateStatsLines() {
+            long now = System.nanoTime();
+            if (mStatsLines != null && now - mStatsTime < STATS_NANOS)
+                return false;
+            mStatsTime = now;
+            mStatsLines = (mStats.summary()
+                           + "input " + mGoals.offered() + " samples, "
+                           + mGoals.coalesced() + " coalesced\n"
+                           + "rate " + Math.round(mScheduler.getRate()) + "/"
+                           + mScheduler.getTargetRate() + " Hz\n"
+                           + "cpu run " + percent(STATE_RUNNING)
+                           + " pause " + percent(STATE_PAUSE)).split("\n");
+            return true;
+        }
+
+        public void setState(int mode) {
+            mMode = mode;
+            wakeSimulation();
+            Log.d(TAG, "Mode is now " + mode);
 
             Message msg = mHandler.obtainMessage();
             Bundle b = new Bundle();
 
-            if (mMode == STATE_RUNNING) {
+            if (mode == STATE_RUNNING) {
                 b.putString("text", "");
                 b.putInt("viz", View.INVISIBLE);
-            } else if (mMode == STATE_PAUSE) {
+            } else if (mode == STATE_PAUSE) {
                 b.putString("text", "Pause");
                 b.putInt("viz", View.VISIBLE);
             }
@@ -118,19 +435,14 @@ public class SnakeView extends SurfaceView implements SurfaceHolder.Callback
          * Pauses the physics update & animation.
          */
         public void pause() {
-            synchronized (mSurfaceHolder) {
-                if (mMode == STATE_RUNNING) setState(STATE_PAUSE);
-            }
+            if (mMode == STATE_RUNNING) setState(STATE_PAUSE);
         }
 
         /**
-         * Resumes from a pause.
+         * Resumes from a pause. The simulation moves its clock up to
+         * now when it sees the change.
          */
         public void unpause() {
-            // Move the real time clock up to now
-            synchronized (mSurfaceHolder) {
-                mLastTime = System.currentTimeMillis() + 100;
-            }
             setState(STATE_RUNNING);
         }
 
@@ -141,40 +453,66 @@ public class SnakeView extends SurfaceView implements SurfaceHolder.Callback
                 unpause();
         }
 
-        private void updatePhysics() {
-            long now = System.currentTimeMillis();
-
-            if (mLastTime > now)
-                return;
+        /**
+         * Sets the rate of fixed physics steps per second. Only used
+         * in fixed-step mode.
+         */
+        public void setStepRate(int hz) {
+            mSimulation.mStepNanos = 1000000000L / hz;
+        }
 
-            long elapsed = now - mLastTime;
+        public int getStepRate() {
+            return (int)(1000000000L / mSimulation.mStepNanos);
+        }
 
-            snake.integrate(now/1000f, elapsed/1000f);
-            mLastTime = now;
+        /**
+         * Chooses between fixed physics steps, independent of the
+         * frame rate, and one variable step per frame.
+         */
+        public void setFixedStep(boolean fixed) {
+            mSimulation.mFixedStep = fixed;
         }
 
         /**
          * Starts the game, setting parameters for the current difficulty.
          */
         public void doStart() {
-            synchronized (mSurfaceHolder) {
-                mLastTime = System.currentTimeMillis() + 100;
-                setState(STATE_PAUSE); // start in pause
-            }
+            setState(STATE_PAUSE); // start in pause
         }
 
         public void setSurfaceSize(int w, int h) {
-            synchronized (mSurfaceHolder) {
-                Rect boundary = new Rect(0, 0, w, h);
-                //boundary.inset(30, 30);
-                snake.setBoundary(boundary);
-                snake.setPosition(w/2f, 5*h/8f);
-            }
+            mSurfaceWidth = w;
+            mSurfaceHeight = h;
+            mInput.offer(InputQueue.RESIZE, w, h);
+            mFullRedraw = true;
+            wakeSimulation();
+            wakeRenderer();
+        }
+
+        /**
+         * Chooses between redrawing only the parts of the surface that
+         * changed and redrawing all of it every frame.
+         */
+        public void setDirtyRendering(boolean dirty) {
+            mDirtyRendering = dirty;
+            mFullRedraw = true;
+            wakeRenderer();
+        }
+
+        /**
+         * Chooses between keeping the body in an offscreen layer that
+         * is updated where it changed, and stroking all of it every
+         * frame.
+         */
+        public void setLayerRendering(boolean layer) {
+            mLayerRendering = layer;
+            mFullRedraw = true;
+            wakeRenderer();
         }
 
 	public boolean doDown(MotionEvent e) {
             if (mMode == STATE_RUNNING) {
-                snake.setGoal(e.getX(), e.getY());
+                mGoals.offer(e.getX(), e.getY());
             }
             return true;
 	}
@@ -182,7 +520,9 @@ public class SnakeView extends SurfaceView implements SurfaceHolder.Callback
 	public boolean doScroll(MotionEvent e1, MotionEvent e2,
 				float dX, float dY) {
             if (mMode == STATE_RUNNING) {
-                snake.setGoal(e2.getX(), e2.getY());
+                // the batched historical samples are all older than
+                // e2's own position, so only that one counts
+                mGoals.offer(e2.getX(), e2.getY(), e2.getHistorySize());
                 return true;
             }
             else
@@ -205,16 +545,397 @@ public class SnakeView extends SurfaceView implements SurfaceHolder.Callback
         }
 
 
+        public void vibrate() {
+            long now = System.currentTimeMillis();
+            if (now - last_vibrate_time > 150)
+                vibrator.vibrate(vibrate_length);
+            last_vibrate_time = now;
+        }
+
         public Bundle saveState(Bundle map) {
-            synchronized (mSurfaceHolder) {
-                if (map != null) {
-                    //map.putInt(KEY_DIFFICULTY, Integer.valueOf(mDifficulty));
-                    map.putFloat("snake.pos.x", snake.pos.x);
-                    map.putFloat("snake.pos.y", snake.pos.y);
+            if (map != null) {
+                try {
+                    byte[] state = encodeState();
+                    if (state != null)
+                        map.putByteArray(KEY_STATE, state);
+                } catch (IOException e) {
+                    Log.e(TAG, "Cannot save state", e);
                 }
             }
             return map;
         }
+
+        /** Brings back the state put into map by saveState */
+        public void restoreState(Bundle map) {
+            byte[] state = map.getByteArray(KEY_STATE);
+            if (state != null)
+                mRestore.set(ByteBuffer.wrap(state));
+            wakeSimulation();
+        }
+
+        /** Saves the whole game to file */
+        public void saveSlot(File file) throws IOException {
+            byte[] state = encodeState();
+            if (state == null)
+                throw new IOException("No game to save yet");
+            SaveState.write(state, file);
+        }
+
+        /**
+         * The state of the snake, encoded by the simulation between
+         * two rounds, so that the caller never holds up a round and
+         * never sees half of one. Null before there is a snake.
+         */
+        private byte[] encodeState() throws IOException {
+            // not started or ended: nobody else has the snake
+            if (!mSimulation.isAlive())
+                return currentState();
+
+            SaveRequest request = new SaveRequest();
+            mSaveWanted.set(request);
+            wakeSimulation();
+            try {
+                request.done.await(SAVE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Save interrupted");
+            }
+            if (request.answered)
+                return request.state;
+            // the simulation ended before it got to the request
+            if (mSaveWanted.compareAndSet(request, null)
+                && !mSimulation.isAlive())
+                return currentState();
+            throw new IOException("The simulation did not answer the save");
+        }
+
+        /**
+         * The state to save: a restore still waiting for the surface,
+         * if there is one, as the snake does not have it yet; null if
+         * the snake has not started either
+         */
+        private byte[] currentState() {
+            ByteBuffer pending = mRestore.get();
+            if (pending != null) {
+                ByteBuffer b = pending.duplicate();
+                byte[] state = new byte[b.remaining()];
+                b.get(state);
+                return state;
+            }
+            if (snake.body.size() < 2)
+                return null;
+            return mSaveState.toByteArray(snake);
+        }
+
+        /** Restores the game saved to file by saveSlot */
+        public void loadSlot(File file) throws IOException {
+            mRestore.set(SaveState.read(file));
+            wakeSimulation();
+        }
+
+        /**
+         * Advances the snake and publishes a snapshot after every
+         * round of physics. Owns the snake; other threads only talk
+         * to it through mInput, mGoals, mSnapshots and mSaveWanted.
+         */
+        private class Simulation extends Thread implements InputQueue.Handler
+        {
+            /** Used to figure out elapsed time between steps, in ns */
+            private long mLastTime;
+
+            /** Whether physics advances in fixed steps of mStepNanos */
+            volatile boolean mFixedStep = true;
+
+            /** Length of a fixed physics step */
+            volatile long mStepNanos = 1000000000L / 60;
+
+            /** Most fixed steps run per round when catching up after a stall */
+            private int mMaxSteps = 5;
+
+            /** Time not yet simulated by fixed steps */
+            private long mAccumulator;
+
+            /** Simulated time in fixed-step mode, in s */
+            private float mSimTime;
+
+            private boolean mWasRunning;
+
+            /** The current recording and the file it goes to */
+            private Recorder mRecorder;
+            private File mRecordFile;
+
+            /** Items to eat, set up with the boundary */
+            private Pickups mPickups;
+            private final Random mRandom = new Random();
+
+            /** Number of items lying around, their size and how much each adds */
+            private static final int PICKUPS = 12;
+            private static final float PICKUP_RADIUS = 6f;
+            private static final float PICKUP_LENGTH = 40f;
+
+            public Simulation() {
+                super("Simulation");
+            }
+
+            @Override
+            public void run() {
+                long next = System.nanoTime();
+                while (mRun) {
+                    mSimulationCpu.mark(mMode, Debug.threadCpuTimeNanos(),
+                                        System.nanoTime());
+                    round();
+                    answerSave();
+
+                    if (mMode != STATE_RUNNING) {
+                        // nothing moves until unpause, input or shutdown,
+                        // all of which wake this thread
+                        LockSupport.park(this);
+                        next = System.nanoTime();
+                        continue;
+                    }
+                    next += mStepNanos;
+                    long wait = next - System.nanoTime();
+                    if (wait > 0)
+                        LockSupport.parkNanos(wait);
+                    else
+                        next = System.nanoTime();
+                }
+                switchRecording(null);
+                answerSave();
+            }
+
+            /** Encodes the snake for encodeState, if it asked */
+            private void answerSave() {
+                SaveRequest request = mSaveWanted.getAndSet(null);
+                if (request == null)
+                    return;
+                request.state = currentState();
+                request.answered = true;
+                request.done.countDown();
+            }
+
+            private void round() {
+                boolean changed = false;
+                if (mRecordTo != mRecordFile) {
+                    switchRecording(mRecordTo);
+                    changed = true;
+                }
+                changed |= mInput.drain(this) > 0;
+                if (mCollision != snake.getCollision()) {
+                    snake.setCollision(mCollision);
+                    Log.d(TAG, "Collision detector is now "
+                          + CollisionDetector.name(mCollision));
+                    changed = true;
+                    if (mRecorder != null) {
+                        try {
+                            mRecorder.settings(snake);
+                        } catch (IOException e) {
+                            recordingFailed(e);
+                        }
+                    }
+                }
+                changed |= mGoals.take(this);
+                if (mRestore.get() != null && snake.getBoundary() != null) {
+                    restore();
+                    changed = true;
+                }
+
+                boolean running = mMode == STATE_RUNNING;
+                // pausing publishes once more, to stop interpolation
+                changed |= running != mWasRunning;
+                if (running && !mWasRunning) {
+                    // Move the real time clock up to now
+                    mLastTime = System.nanoTime() + 100000000L;
+                    mAccumulator = 0;
+                }
+                mWasRunning = running;
+
+                if (running) {
+                    long start = System.nanoTime();
+                    updatePhysics();
+                    mStats.record(FrameStats.PHYSICS,
+                                  System.nanoTime() - start);
+                }
+                // a paused snake only needs a new snapshot when
+                // something happened to it
+                if (running || changed)
+                    publish();
+            }
+
+            /** Restores the pending saved state, keeping the boundary */
+            private void restore() {
+                ByteBuffer state = mRestore.getAndSet(null);
+                if (state == null)
+                    return;
+                try {
+                    // the surface may have changed since the save
+                    SaveState.restore(state, snake, snake.getBoundary());
+                } catch (IOException e) {
+                    Log.e(TAG, "Cannot restore saved state", e);
+                }
+                mFullRedraw = true;
+                if (mRecorder != null) {
+                    Log.d(TAG, "Recording stops at a restore");
+                    mRecordTo = null;
+                }
+            }
+
+            /** Ends the current recording and starts one to file */
+            private void switchRecording(File file) {
+                if (mRecorder != null) {
+                    try {
+                        mRecorder.close();
+                    } catch (IOException e) {
+                        Log.e(TAG, "Cannot finish " + mRecordFile, e);
+                    }
+                    Log.d(TAG, "Recorded to " + mRecordFile);
+                    mRecorder = null;
+                }
+                mRecordFile = file;
+                if (file == null || snake.getBoundary() == null)
+                    return;
+                try {
+                    mRecorder = new Recorder(new FileOutputStream(file));
+                    Bounds b = snake.getBoundary();
+                    snake.setPosition(b.width()/2f, 5*b.height()/8f);
+                    mRecorder.reset(snake);
+                } catch (IOException e) {
+                    Log.e(TAG, "Cannot record to " + file, e);
+                    mRecorder = null;
+                }
+            }
+
+            /** Hands a recording error over to the log and stops recording */
+            private void recordingFailed(IOException e) {
+                Log.e(TAG, "Recording to " + mRecordFile + " failed", e);
+                try {
+                    mRecorder.close();
+                } catch (IOException ignored) {
+                }
+                mRecorder = null;
+            }
+
+            /** Advances the snake by one step of dt, recording it */
+            private void step(float t, float dt) {
+                snake.integrate(t, dt);
+                // every item eaten grows the snake and is put back elsewhere
+                int eaten = mPickups != null ? mPickups.eat(snake, 1f) : 0;
+                if (eaten > 0)
+                    mPickups.scatter(snake.getBoundary(), eaten,
+                                     PICKUP_LENGTH, mRandom);
+                if (mRecorder != null) {
+                    try {
+                        mRecorder.step(dt);
+                        // the growth applies from the next step on
+                        if (eaten > 0)
+                            mRecorder.length(snake);
+                    } catch (IOException e) {
+                        recordingFailed(e);
+                    }
+                }
+            }
+
+            @Override
+            public void onInput(int type, float x, float y) {
+                switch (type) {
+                case InputQueue.GOAL:
+                    snake.setGoal(x, y);
+                    break;
+                case InputQueue.RESIZE:
+                    Bounds boundary = new Bounds(0, 0, x, y);
+                    snake.setBoundary(boundary);
+                    mPickups = new Pickups(boundary, PICKUP_RADIUS,
+                                           snake.getWidth() + PICKUP_RADIUS);
+                    mPickups.scatter(boundary, PICKUPS, PICKUP_LENGTH, mRandom);
+                    if (mRestore.get() != null) {
+                        restore();
+                        return;
+                    }
+                    Log.d(TAG, "Snake: setPosition=" + x/2f + ", " + 5*y/8f);
+                    snake.setPosition(x/2f, 5*y/8f);
+                    break;
+                }
+
+                if (mRecorder == null) {
+                    if (type == InputQueue.RESIZE && mRecordFile != null)
+                        switchRecording(mRecordFile);
+                    return;
+                }
+                try {
+                    if (type == InputQueue.GOAL)
+                        mRecorder.goal(x, y);
+                    else if (type == InputQueue.RESIZE)
+                        mRecorder.reset(snake);
+                } catch (IOException e) {
+                    recordingFailed(e);
+                }
+            }
+
+            private void updatePhysics() {
+                long now = System.nanoTime();
+
+                if (mLastTime > now)
+                    return;
+
+                long elapsed = now - mLastTime;
+                mLastTime = now;
+
+                int mode = snake.getMode();
+                if (!mFixedStep) {
+                    step(now/1e9f, elapsed/1e9f);
+                } else {
+                    stepPhysics(elapsed);
+                }
+
+                if (mode != Snake.MODE_CRASH &&
+                    snake.getMode() == Snake.MODE_CRASH)
+                    Log.d(TAG, "Collision!");
+                else if (mode == Snake.MODE_CRASH &&
+                         snake.getMode() != Snake.MODE_CRASH)
+                    Log.d(TAG, "Uncrash");
+            }
+
+            private void stepPhysics(long elapsed) {
+                // gafferongames.com/game-physics/fix-your-timestep/
+                long step = mStepNanos;
+                float dt = step/1e9f;
+                mAccumulator += elapsed;
+                for (int steps = 0;
+                     mAccumulator >= step && steps < mMaxSteps; ++steps) {
+                    step(mSimTime, dt);
+                    mSimTime += dt;
+                    mAccumulator -= step;
+                }
+                // after a stall, drop what could not be caught up with
+                if (mAccumulator >= step)
+                    mAccumulator %= step;
+            }
+
+            private void publish() {
+                Snapshot s = mSnapshots.back();
+                snake.snapshot(s);
+                if (mPickups != null)
+                    mPickups.snapshot(s);
+                if (mFixedStep && mWasRunning) {
+                    s.time = mLastTime - mAccumulator;
+                    s.step = mStepNanos;
+                } else {
+                    s.time = mLastTime;
+                    s.step = 0;
+                }
+                mSnapshots.publish();
+                ++mPublished;
+                wakeRenderer();
+            }
+        }
+    }
+
+    /** A save asked of the simulation, and its answer */
+    private static class SaveRequest
+    {
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile byte[] state;
+        volatile boolean answered;
     }
 
     private GestureDetector gestures;
@@ -296,287 +1017,6 @@ public class SnakeView extends SurfaceView implements SurfaceHolder.Callback
         thread.pause();*/
     }
 
-    class Snake {
-        protected class State extends PointF
-        {
-            public State() {}
-            public State(float x, float y) { super(x, y); }
-            //public State(PointF p) { super(p); }
-
-            @Override
-            public String toString() {
-                return "State(" + x + ", " + y + ")";
-            }
-
-            public State scale(float a) {
-                return new State(a*x, a*y);
-            }
-
-            public State add(PointF other) {
-                return new State(this.x + other.x, this.y + other.y);
-            }
-
-            public State subtract(PointF other) {
-                return new State(this.x - other.x, this.y - other.y);
-            }
-
-            public State normed() {
-                if ( equals(0f, 0f) )
-                    return this;
-                return scale(1f/length());
-            }
-        }
-
-        protected class Derivative
-        {
-            public Derivative() {}
-            public Derivative(State v, State a) {
-                vel = v;
-                acc = a;
-            }
-
-            public State vel;
-            public State acc;
-        }
-
-	private int color;
-	protected float width;
-
-	protected Rect boundary;
-	//protected RectF inset;
-
-        protected final State pos;
-        protected final State vel;
-
-        protected final Path path;
-        protected final PathMeasure pathMeasure;
-
-        private Bitmap bitmap;
-
-        protected float maxLength;
-        protected float startLength;
-        protected float speed;
-
-        protected final State goal;
-        protected float goal_dist = 50f;
-        protected float max_goal_dist = 50f;
-
-        public static final int MODE_FREE = 1;
-        public static final int MODE_FORCED = 2;
-        public static final int MODE_CRASH = 3;
-        protected int mode;
-
-        /** Spring tightness */
-        protected float k;
-
-        /** Damping coefficient */
-        protected float b;
-
-        protected long last_vibrate_time = 0;
-        protected final long vibrate_length = 40;
-        protected final Vibrator vibrator =
-            (Vibrator)mContext.getSystemService(Context.VIBRATOR_SERVICE);
-        protected boolean human;
-
-	public Snake(int color) {
-            this.color = color;
-            width = 10f;
-            maxLength = 500f;
-            startLength = 50f;
-            speed = 100f;
-
-            pos = new State(0,0);
-            vel = new State(0,0);
-
-            path = new Path();
-            pathMeasure = new PathMeasure();
-
-            goal = new State(0,0);
-
-            mode = MODE_FREE;
-
-            setConstants(80f, 50f);
-	}
-
-	public void setPosition(float x, float y) {
-            Log.d(TAG, "Snake: setPosition=" + x + ", " + y);
-            pos.x = goal.x = x;
-            pos.y = goal.y = y;
-            vel.x = vel.y = 0;
-
-            path.reset();
-            path.setLastPoint(x, y + startLength);
-            path.lineTo(x, y);
-	}
-
-        public void setGoal(PointF g) {
-            setGoal(g.x, g.y);
-        }
-
-	public void setGoal(float x, float y) {
-            goal.x = x;
-            goal.y = y;
-
-            State dir = goal.subtract(pos);
-            dir = dir.normed().scale(goal_dist);
-            goal.set(pos.add(dir));
-	}
-
-        public void setMode(int m) {
-            //if (human && m == MODE_COLLISION && mode != MODE_COLLISION &&
-            //    lastBallContact.difference.dnorm() > 150)
-            //    vibrate();
-            mode = m;
-        }
-
-        public void setConstants(float k, float b) {
-            this.k = k;
-            this.b = b;
-        }
-
-        public void setBoundary(Rect b) {
-            boundary = b;
-            // the lookup bitmap. ALPHA_8 does not seem to work.
-            bitmap = Bitmap.createBitmap(b.width(), b.height(),
-                                         Bitmap.Config.RGB_565);
-            //inset = new RectF(b);
-            //inset.inset(radius, radius);
-        }
-
-	public void draw(Canvas canvas) {
-	    Paint paint = new Paint();
-	    paint.setAntiAlias(true);
-
-            paint.setColor(color);
-            paint.setStyle(Paint.Style.STROKE);
-            paint.setStrokeCap(Paint.Cap.ROUND);
-            paint.setStrokeWidth(width);
-
-            canvas.drawPath(path, paint);
-
-            // // DEBUG: draw circle around goal
-            // paint.setColor(0xffaabbdd);
-            // paint.setStrokeWidth(2);
-            // canvas.drawCircle(goal.x, goal.y, max_goal_dist, paint);
-
-            paint.setStyle(Paint.Style.FILL);
-            paint.setColor(Color.YELLOW);
-            canvas.drawCircle(pos.x, pos.y, width, paint);
-
-            //if ( true )
-            //    return;
-
-            // DEBUG: draw tail path with collision indication
-            Path tail = tailPath();
-            paint.setStyle(Paint.Style.STROKE);
-            paint.setColor(Color.GREEN);
-            if ( mode == MODE_CRASH )
-                paint.setColor(Color.WHITE);
-            canvas.drawPath(tail, paint);
-	}
-
-        protected Derivative evaluate(float t, float dt, Derivative D) {
-            Derivative result = new Derivative();
-
-            State newPos = pos.add(D.vel.scale(dt));
-            State newVel = vel.add(D.acc.scale(dt));
-
-            result.vel = newVel;
-
-            State dir = newPos.subtract(goal);
-            result.acc = dir.scale(-k).subtract(newVel.scale(b));
-
-            return result;
-        }
-
-        protected void integrate(float t, float dt) {
-            // gafferongames.com/game-physics/integration-basics/
-            Derivative a = evaluate(t, 0.0f, new Derivative(new State(),
-                                                            new State()));
-            Derivative b = evaluate(t+dt*0.5f, dt*0.5f, a);
-            Derivative c = evaluate(t+dt*0.5f, dt*0.5f, b);
-            Derivative d = evaluate(t+dt, dt, c);
-
-            float dxdt  = 1f/6f * (a.vel.x + 2f*(b.vel.x + c.vel.x) + d.vel.x);
-            float dydt  = 1f/6f * (a.vel.y + 2f*(b.vel.y + c.vel.y) + d.vel.y);
-            float ddxdt = 1f/6f * (a.acc.x + 2f*(b.acc.x + c.acc.x) + d.acc.x);
-            float ddydt = 1f/6f * (a.acc.y + 2f*(b.acc.y + c.acc.y) + d.acc.y);
-
-            pos.x = pos.x + dxdt * dt;
-            pos.y = pos.y + dydt * dt;
-            vel.x = vel.x + ddxdt * dt;
-            vel.y = vel.y + ddydt * dt;
-
-            path.lineTo(pos.x, pos.y);
-
-            pathMeasure.setPath(path, false);
-            float length = pathMeasure.getLength();
-            Path dst = new Path();
-
-            if ( length > maxLength ) {
-                pathMeasure.getSegment(length - maxLength, length,
-                                       dst, true);
-                path.set(dst);
-            }
-
-            Path tail = tailPath();
-            bitmap.eraseColor(Color.BLACK);
-            Canvas canvas = new Canvas(bitmap);
-
-	    Paint paint = new Paint();
-            paint.setStyle(Paint.Style.STROKE);
-            paint.setStrokeCap(Paint.Cap.ROUND);
-            paint.setStrokeWidth(width);
-            paint.setColor(Color.WHITE);
-
-            canvas.drawPath(tail, paint);
-
-            if ( bitmap.getPixel((int)pos.x, (int)pos.y) == Color.WHITE ) {
-                if (mode != MODE_CRASH)
-                    Log.d(TAG, "Collision!");
-                setMode(MODE_CRASH);
-             }
-             else {
-                 if (mode == MODE_CRASH)
-                     Log.d(TAG, "Uncrash");
-                 setMode(MODE_FORCED);
-             }
-
-            setGoal(goal.add(vel.normed().scale(10)));
-        }
-
-        private Path tailPath() {
-            Path result = new Path();
-            pathMeasure.setPath(path, false);
-            pathMeasure.getSegment(0, 0.95f*pathMeasure.getLength(),
-                                   result, true);
-            return result;
-        }
-
-        // public Rect headRect() {
-        //     Rect result = new Rect((int)pos.x, (int)pos.y,
-        //                            (int)pos.x, (int)pos.y);
-        //     result.inset(-(int)width, -(int)width);
-        //     return result;
-        // }
-
-        public void vibrate() {
-            long now = System.currentTimeMillis();
-            if (now - last_vibrate_time > 150)
-                vibrator.vibrate(vibrate_length);
-            last_vibrate_time = now;
-        }
-
-        @Override
-        public String toString() {
-            return getClass().getName() + ": Color=" + color;
-        }
-
-        public float distanceToGoal() {
-            return pos.subtract(goal).length();
-        }
-    }
-
     private class GestureListener implements GestureDetector.OnGestureListener,
 					     GestureDetector.OnDoubleTapListener
     {